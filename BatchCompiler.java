@@ -0,0 +1,131 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Batch mode, started with {@code java jminusminus.Main -batch <manifest>},
+ * for compiling many independent programs at once. Each line of the manifest
+ * names one program, as the options and source files that would be given to
+ * {@link Main}; empty lines and lines starting with # are ignored. The
+ * programs are compiled concurrently on a thread pool sized to the machine,
+ * each in isolation, in a {@link Session} of its own (so with its own
+ * symbol table, class loader, emitters and error state). The batch ends with
+ * a report giving each program's outcome and diagnostics, in manifest order,
+ * followed by the numbers of programs that passed and failed.
+ */
+
+class BatchCompiler {
+
+    /**
+     * The outcome of compiling one program.
+     */
+
+    private static class Outcome {
+
+        /** The program (its line in the manifest). */
+        public String program;
+
+        /** Whether an error occurred while compiling the program. */
+        public boolean errorHasOccurred;
+
+        /** Diagnostics reported while compiling the program. */
+        public String diagnostics;
+
+    }
+
+    /**
+     * Compiles the programs listed in the specified manifest, and writes the
+     * report to the specified stream.
+     *
+     * @param manifest
+     *            name of the manifest file.
+     * @param out
+     *            stream to which the report is written.
+     * @return {@code true} if any of the programs failed to compile (or the
+     *         manifest cannot be read) and {@code false} otherwise.
+     */
+
+    public static boolean run(String manifest, PrintStream out) {
+        ArrayList<String> programs = new ArrayList<String>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(manifest))) {
+                line = line.trim();
+                if (!line.equals("") && !line.startsWith("#")) {
+                    programs.add(line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: cannot read manifest " + manifest);
+            return true;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime
+                .getRuntime().availableProcessors());
+        ArrayList<Callable<Outcome>> tasks = new ArrayList<Callable<Outcome>>();
+        for (String program : programs) {
+            tasks.add(() -> compile(program));
+        }
+        int failed = 0;
+        try {
+            for (Future<Outcome> future : pool.invokeAll(tasks)) {
+                Outcome outcome = future.get();
+                out.println((outcome.errorHasOccurred ? "FAIL " : "PASS ")
+                        + outcome.program);
+                for (String line : outcome.diagnostics.split("\n")) {
+                    if (!line.equals("")) {
+                        out.println("    " + line);
+                    }
+                }
+                failed += outcome.errorHasOccurred ? 1 : 0;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("Error: batch interrupted");
+            return true;
+        } finally {
+            pool.shutdown();
+        }
+        out.printf("%d passed, %d failed\n", programs.size() - failed, failed);
+        return failed > 0;
+    }
+
+    /**
+     * Compiles a program in a session of its own.
+     *
+     * @param program
+     *            the options and source files, separated by white space.
+     * @return the outcome.
+     */
+
+    private static Outcome compile(String program) {
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Session session = new Session(new PrintStream(
+                new ByteArrayOutputStream()), new PrintStream(stderr));
+        session.host();
+        Outcome outcome = new Outcome();
+        outcome.program = program;
+        try {
+            outcome.errorHasOccurred = Main.compile(program.split("\\s+"),
+                    session);
+        } catch (RuntimeException | LinkageError e) {
+            // Fail just this program
+            session.err().println("Compiler failure: " + e);
+            outcome.errorHasOccurred = true;
+        }
+        session.err().flush();
+        outcome.diagnostics = stderr.toString();
+        return outcome;
+    }
+
+}
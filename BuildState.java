@@ -0,0 +1,391 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The state of an incremental build, kept in a file from one compilation to
+ * the next (given with {@code -i <file>}). For each source file, it records
+ * a digest of the source's contents, a digest of the signature of each type
+ * the source declares (the bytes of the type's partial class, produced in
+ * pre-analysis by {@code partialCodegen}), the types the source depends on
+ * (the types declared by the other sources that it can refer to by name) and
+ * its superclasses.
+ * <p>
+ * A source is stale, and must be recompiled, if its contents have changed,
+ * if any of its class files is missing, if one of its superclasses is
+ * declared by a stale source, or if the signature of a type it depends on
+ * has changed. The last of these is known only once the stale sources have
+ * been pre-analyzed; when it makes more sources stale, the compilation is
+ * started afresh with them. The other sources are not parsed, analyzed or
+ * generated code for; their types are defined from their class files, as
+ * prebuilt classes of the {@link Session}.
+ */
+
+class BuildState {
+
+    /**
+     * What is recorded for a source file.
+     */
+
+    private static class Entry {
+
+        /** Digest of the source's contents. */
+        public String digest;
+
+        /** Digests of the signatures of the types declared by the source. */
+        public Map<String, String> signatures =
+            new LinkedHashMap<String, String>();
+
+        /** Names of the types the source depends on. */
+        public ArrayList<String> dependencies = new ArrayList<String>();
+
+        /** Names of the superclasses of the source's types. */
+        public ArrayList<String> superClasses = new ArrayList<String>();
+
+    }
+
+    /** Directory the class files were written to. */
+    private String outputDir;
+
+    /** The entries for the source files, as of the last build. */
+    private Map<String, Entry> entries;
+
+    /** The source files being compiled. */
+    private ArrayList<String> sourceFiles;
+
+    /** Digests of the current contents of the source files. */
+    private Map<String, String> digests;
+
+    /** The source files that must be recompiled. */
+    private Set<String> stale;
+
+    /**
+     * Constructs a build state for compiling the specified source files to
+     * the specified directory, starting from the state of the last build.
+     *
+     * @param entries
+     *            the entries as of the last build.
+     * @param lastOutputDir
+     *            the output directory of the last build.
+     * @param sourceFiles
+     *            the source files being compiled.
+     * @param outputDir
+     *            the output directory.
+     */
+
+    private BuildState(Map<String, Entry> entries, String lastOutputDir,
+            ArrayList<String> sourceFiles, String outputDir) {
+        this.entries = entries;
+        this.sourceFiles = sourceFiles;
+        this.outputDir = outputDir;
+        digests = new LinkedHashMap<String, String>();
+        stale = new HashSet<String>();
+        for (String sourceFile : sourceFiles) {
+            try {
+                digests.put(sourceFile, digest(Files.readAllBytes(Paths
+                        .get(sourceFile))));
+            } catch (IOException e) {
+                // Leave it to the scanner to report
+            }
+            Entry entry = entries.get(sourceFile);
+            if (entry == null || !outputDir.equals(lastOutputDir)
+                    || !entry.digest.equals(digests.get(sourceFile))) {
+                stale.add(sourceFile);
+                continue;
+            }
+            for (String name : entry.signatures.keySet()) {
+                if (!classFile(name).exists()) {
+                    stale.add(sourceFile);
+                }
+            }
+        }
+        addStaleSubclasses();
+    }
+
+    /**
+     * Reads the build state from the specified file, for compiling the
+     * specified source files to the specified directory. If the file does not
+     * exist or cannot be read, all the sources are stale.
+     *
+     * @param stateFile
+     *            name of the build-state file.
+     * @param sourceFiles
+     *            the source files being compiled.
+     * @param outputDir
+     *            the output directory.
+     * @return the build state.
+     */
+
+    public static BuildState read(String stateFile,
+            ArrayList<String> sourceFiles, String outputDir) {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        String lastOutputDir = null;
+        try {
+            Entry entry = null;
+            for (String line : Files.readAllLines(Paths.get(stateFile))) {
+                String[] words = line.split(" ", 3);
+                if (words[0].equals("output") && words.length == 2) {
+                    lastOutputDir = words[1];
+                } else if (words[0].equals("source") && words.length == 3) {
+                    entry = new Entry();
+                    entry.digest = words[1];
+                    entries.put(words[2], entry);
+                } else if (words[0].equals("signature") && words.length == 3) {
+                    entry.signatures.put(words[2], words[1]);
+                } else if (words[0].equals("depends") && words.length == 2) {
+                    entry.dependencies.add(words[1]);
+                } else if (words[0].equals("extends") && words.length == 2) {
+                    entry.superClasses.add(words[1]);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // No (usable) state; compile everything
+            entries.clear();
+        }
+        return new BuildState(entries, lastOutputDir, sourceFiles, outputDir);
+    }
+
+    /**
+     * Writes the build state to the specified file.
+     *
+     * @param stateFile
+     *            name of the build-state file.
+     * @exception IOException
+     *                if the file cannot be written.
+     */
+
+    public void write(String stateFile) throws IOException {
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths
+                .get(stateFile)));
+        out.println("# j-- build state");
+        out.println("output " + outputDir);
+        for (String sourceFile : sourceFiles) {
+            Entry entry = entries.get(sourceFile);
+            if (entry == null) {
+                continue;
+            }
+            out.println("source " + entry.digest + " " + sourceFile);
+            for (Map.Entry<String, String> signature : entry.signatures
+                    .entrySet()) {
+                out.println("signature " + signature.getValue() + " "
+                        + signature.getKey());
+            }
+            for (String name : entry.dependencies) {
+                out.println("depends " + name);
+            }
+            for (String name : entry.superClasses) {
+                out.println("extends " + name);
+            }
+        }
+        out.close();
+        if (out.checkError()) {
+            throw new IOException("cannot write build state to " + stateFile);
+        }
+    }
+
+    /**
+     * Returns the source files that must be recompiled, in the order in which
+     * they were given.
+     *
+     * @return the stale source files.
+     */
+
+    public ArrayList<String> staleSources() {
+        ArrayList<String> staleSources = new ArrayList<String>();
+        for (String sourceFile : sourceFiles) {
+            if (stale.contains(sourceFile)) {
+                staleSources.add(sourceFile);
+            }
+        }
+        return staleSources;
+    }
+
+    /**
+     * Adds the classes of the types declared by the sources that are not
+     * stale to the specified session, as prebuilt classes.
+     *
+     * @param session
+     *            the compilation session.
+     * @exception IOException
+     *                if a class file cannot be read.
+     */
+
+    public void addPrebuilt(Session session) throws IOException {
+        for (String sourceFile : sourceFiles) {
+            if (stale.contains(sourceFile)) {
+                continue;
+            }
+            for (String name : entries.get(sourceFile).signatures.keySet()) {
+                session.addPrebuilt(name, Files.readAllBytes(classFile(name)
+                        .toPath()));
+            }
+        }
+    }
+
+    /**
+     * Once the stale sources have been pre-analyzed, finds the types whose
+     * signatures have changed since the last build, and makes the sources
+     * depending on them stale too.
+     *
+     * @param units
+     *            the (pre-analyzed) units of the stale sources.
+     * @param session
+     *            the compilation session.
+     * @return {@code true} if more sources are now stale (and so the
+     *         compilation must be started afresh), and {@code false}
+     *         otherwise.
+     */
+
+    public boolean addStaleDependents(ArrayList<JCompilationUnit> units,
+            Session session) {
+        Set<String> changed = new HashSet<String>();
+        for (JCompilationUnit unit : units) {
+            Entry entry = entries.get(unit.fileName());
+            Set<String> declared = new HashSet<String>();
+            for (Type type : unit.declaredTypes()) {
+                String name = type.toString();
+                declared.add(name);
+                if (entry == null
+                        || !session.signatures().get(name).equals(
+                                entry.signatures.get(name))) {
+                    changed.add(name);
+                }
+            }
+            if (entry != null) {
+                for (String name : entry.signatures.keySet()) {
+                    if (!declared.contains(name)) {
+                        changed.add(name);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!sourceFiles.contains(entry.getKey())) {
+                // The source is gone, and so are its types
+                changed.addAll(entry.getValue().signatures.keySet());
+            }
+        }
+        int staleCount = stale.size();
+        for (String sourceFile : sourceFiles) {
+            if (stale.contains(sourceFile)) {
+                continue;
+            }
+            for (String name : entries.get(sourceFile).dependencies) {
+                if (changed.contains(name)) {
+                    stale.add(sourceFile);
+                }
+            }
+        }
+        addStaleSubclasses();
+        return stale.size() > staleCount;
+    }
+
+    /**
+     * Records the state of the specified (compiled) units, and forgets the
+     * sources no longer being compiled.
+     *
+     * @param units
+     *            the units of the stale sources.
+     * @param session
+     *            the compilation session.
+     */
+
+    public void update(ArrayList<JCompilationUnit> units, Session session) {
+        for (JCompilationUnit unit : units) {
+            Entry entry = new Entry();
+            entry.digest = digests.get(unit.fileName());
+            for (Type type : unit.declaredTypes()) {
+                String name = type.toString();
+                entry.signatures.put(name, session.signatures().get(name));
+            }
+            entry.dependencies = unit.dependencies();
+            for (String name : unit.superClassNames()) {
+                if (entry.dependencies.contains(name)) {
+                    entry.superClasses.add(name);
+                }
+            }
+            entries.put(unit.fileName(), entry);
+        }
+        entries.keySet().retainAll(sourceFiles);
+        stale.clear();
+    }
+
+    /**
+     * Returns a digest (in hex) of the specified bytes.
+     *
+     * @param bytes
+     *            the bytes.
+     * @return the digest.
+     */
+
+    public static String digest(byte[] bytes) {
+        try {
+            StringBuilder digest = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                digest.append(String.format("%02x", b));
+            }
+            return digest.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Makes stale every source one of whose superclasses is declared by a
+     * stale source (or no longer declared at all), so that a prebuilt class
+     * extends only JDK and prebuilt classes.
+     */
+
+    private void addStaleSubclasses() {
+        boolean added = true;
+        while (added) {
+            added = false;
+            Set<String> prebuiltTypes = new HashSet<String>();
+            for (String sourceFile : sourceFiles) {
+                if (!stale.contains(sourceFile)) {
+                    prebuiltTypes.addAll(entries.get(sourceFile).signatures
+                            .keySet());
+                }
+            }
+            for (String sourceFile : sourceFiles) {
+                if (stale.contains(sourceFile)) {
+                    continue;
+                }
+                for (String name : entries.get(sourceFile).superClasses) {
+                    if (!prebuiltTypes.contains(name)) {
+                        stale.add(sourceFile);
+                        added = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the class file for the type having the specified name.
+     *
+     * @param name
+     *            fully qualified name of the type.
+     * @return the class file.
+     */
+
+    private File classFile(String name) {
+        return new File(outputDir, name.replace(".", File.separator)
+                + ".class");
+    }
+
+}
@@ -945,7 +945,7 @@ public class CLAbsorber {
     public CLAbsorber(String className) {
         try {
             this.className = className;
-            CLPath classPath = new CLPath();
+            CLPath classPath = CLPath.defaultPath();
             CLInputStream in = classPath.loadClass(className);
             errorHasOccurred = false;
             if (in == null) {
@@ -13,6 +13,7 @@ import java.io.OutputStream;
 
 import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Stack;
 import java.util.StringTokenizer;
 import java.util.TreeMap;
@@ -48,6 +49,9 @@ public class CLEmitter {
     /** In-memory representation of the class. */
     private CLFile clFile;
 
+    /** Number of instructions in the methods ended so far. */
+    private int instructionCount;
+
     /** Constant pool of the class. */
     private CLConstantPool constantPool;
 
@@ -139,12 +143,6 @@ public class CLEmitter {
      */
     private boolean errorHasOccurred;
 
-    /**
-     * Class loader to use for creating in-memory representation of classes from
-     * byte streams.
-     */
-    private static ByteClassLoader byteClassLoader;
-
     /**
      * Initialize all variables used for adding a method to the ClassFile
      * structure to their appropriate values.
@@ -176,6 +174,7 @@ public class CLEmitter {
     private void endOpenMethodIfAny() {
         if (isMethodOpen) {
             isMethodOpen = false;
+            instructionCount += mCode.size();
             if (!mInstructionAfterLabel) {
                 // Must jump to an instruction
                 addNoArgInstruction(NOP);
@@ -880,8 +879,8 @@ public class CLEmitter {
      */
 
     private void reportEmitterError(String message, Object... args) {
-        System.err.printf(message, args);
-        System.err.println();
+        Session.current().report(new Diagnostic(null, 0, String.format(
+                message, args)));
         errorHasOccurred = true;
     }
 
@@ -1895,11 +1894,14 @@ public class CLEmitter {
     }
 
     /**
-     * Sets a new ByteClassLoader for loading classes from byte streams.
+     * Returns the number of instructions in the methods emitted so far, over
+     * all the classes built by this emitter.
+     *
+     * @return the number of instructions.
      */
 
-    public static void initializeByteClassLoader() {
-        byteClassLoader = new ByteClassLoader();
+    public int instructionCount() {
+        return instructionCount;
     }
 
     /**
@@ -1914,13 +1916,15 @@ public class CLEmitter {
     }
 
     /**
-     * Returns the class being constructed as a Java {@code Class} instance.
+     * Returns the bytes of the class being constructed, as they would be
+     * written to a .class file.
      * 
-     * @return Java Class instance.
+     * @return the bytes of the class; {@code null} if they cannot be
+     *         extracted.
      */
-    public Class toClass() {
+
+    public byte[] toBytes() {
         endOpenMethodIfAny();
-        Class theClass = null;
         try {
             // Extract the bytes from the class representation in
             // memory into an array of bytes
@@ -1929,15 +1933,30 @@ public class CLEmitter {
                     byteStream));
             clFile.write(out);
             out.close();
-            byte[] classBytes = byteStream.toByteArray();
-            byteStream.close();
+            return byteStream.toByteArray();
+        } catch (IOException e) {
+            reportEmitterError("Cannot write class to byte stream");
+        }
+        return null;
+    }
 
+    /**
+     * Returns the class being constructed as a Java {@code Class} instance,
+     * defined in the current {@link Session}'s class loader.
+     * 
+     * @return Java Class instance.
+     */
+    public Class toClass() {
+        byte[] classBytes = toBytes();
+        Class theClass = null;
+        if (classBytes == null) {
+            return theClass;
+        }
+        try {
             // Load a Java Class instance from its byte
             // representation
-            byteClassLoader.setClassBytes(classBytes);
-            theClass = byteClassLoader.loadClass(name, true);
-        } catch (IOException e) {
-            reportEmitterError("Cannot write class to byte stream");
+            theClass = Session.current().byteClassLoader().loadClass(name,
+                    classBytes);
         } catch (ClassNotFoundException e) {
             reportEmitterError("Cannot load class from byte stream");
         }
@@ -1947,15 +1966,35 @@ public class CLEmitter {
     /**
      * Writes out the class to the file system as a .class file if 
      * {@code toFile} is {@code true}. The destination directory for the file 
-     * can be set using the {@link #destinationDir(String)} method.
+     * can be set using the {@link #destinationDir(String)} method; if the 
+     * current {@link Session} writes its classes to a JAR, the class is 
+     * written to the JAR instead. Otherwise,
+     * if the current {@link Session} keeps its classes in memory, adds the 
+     * bytes of the class to them.
      */
 
     public void write() {
         endOpenMethodIfAny();
         if (!toFile) {
+            Map<String, byte[]> classes = Session.current().classes();
+            if (classes != null) {
+                classes.put(name.replace("/", "."), toBytes());
+            }
             return;
         }
         String outFile = destDir + File.separator + name + ".class";
+        Stats.Measurement measurement = Stats.measureThread(Session.current()
+                .stats(), "codegen/write");
+        JarOutput jar = Session.current().jar();
+        if (jar != null) {
+            try {
+                jar.write(name + ".class", clFile);
+            } catch (IOException e) {
+                reportEmitterError("Cannot write to file %s", jar.fileName());
+            }
+            measurement.stop();
+            return;
+        }
         try {
             File file = new File(destDir + File.separator
                     + name.substring(0, name.lastIndexOf("/") + 1));
@@ -1964,11 +2003,13 @@ public class CLEmitter {
                     new FileOutputStream(outFile)));
             clFile.write(out);
             out.close();
+            Session.current().addOutput(outFile);
         } catch (FileNotFoundException e) {
             reportEmitterError("File %s not found", outFile);
         } catch (IOException e) {
             reportEmitterError("Cannot write to file %s", outFile);
         }
+        measurement.stop();
     }
 }
 
@@ -2190,35 +2231,75 @@ class CLBranchStack {
 }
 
 /**
- * A class loader to be able to load a class from a byte stream.
+ * A class loader to be able to load a class from a byte stream. It belongs to
+ * a {@link Session}, and may be used by the session's threads concurrently.
  */
 
 class ByteClassLoader extends ClassLoader {
 
-    /** Bytes representing the class. */
+    /** The session this class loader belongs to. */
+    private Session session;
+
+    /**
+     * Bytes representing the class being loaded by 
+     * {@link #loadClass(String, byte[])}; {@code null} otherwise.
+     */
     private byte[] bytes;
 
     /** Has a package been defined for this class loader? */
     private boolean pkgDefined = false;
 
     /**
-     * Sets the bytes representing the class.
+     * Constructs a class loader for the specified session.
+     * 
+     * @param session
+     *            the session this class loader belongs to.
+     */
+
+    public ByteClassLoader(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the session this class loader belongs to.
+     * 
+     * @return the session.
+     */
+
+    public Session session() {
+        return session;
+    }
+
+    /**
+     * Loads the class having the specified name, defining it from the 
+     * specified bytes if it has not been loaded yet.
      * 
+     * @param name
+     *            name of the class.
      * @param bytes
      *            bytes representing the class.
+     * @return the class.
+     * @exception ClassNotFoundException
+     *                if the class cannot be loaded.
      */
 
-    public void setClassBytes(byte[] bytes) {
+    public synchronized Class<?> loadClass(String name, byte[] bytes)
+            throws ClassNotFoundException {
         this.bytes = bytes;
+        try {
+            return loadClass(name, true);
+        } finally {
+            this.bytes = null;
+        }
     }
 
     /**
      * {@inheritDoc}
      */
 
-    public Class<?> loadClass(String name, boolean resolve)
+    public synchronized Class<?> loadClass(String name, boolean resolve)
             throws ClassNotFoundException {
-        Class cls = findLoadedClass(name);
+        Class cls = findLoadedClass(name.replace("/", "."));
         if (cls == null) {
             try {
                 cls = findSystemClass(name);
@@ -2232,6 +2313,14 @@ class ByteClassLoader extends ClassLoader {
             }
         }
         if (cls == null) {
+            // Besides the class whose bytes we were given, only the
+            // session's prebuilt classes can be defined here
+            byte[] classBytes = bytes != null ? bytes : session.prebuilt(name
+                    .replace("/", "."));
+            bytes = null;
+            if (classBytes == null) {
+                throw new ClassNotFoundException(name);
+            }
             name = name.replace("/", ".");
             String pkg = name.lastIndexOf('.') == -1 ? "" : name.substring(0,
                     name.lastIndexOf('.'));
@@ -2244,7 +2333,7 @@ class ByteClassLoader extends ClassLoader {
                 definePackage(pkg, "", "", "", "", "", "", null);
                 pkgDefined = true;
             }
-            cls = defineClass(name, bytes, 0, bytes.length);
+            cls = defineClass(name, classBytes, 0, classBytes.length);
             if (resolve && cls != null) {
                 resolveClass(cls);
             }
@@ -2,12 +2,22 @@
 
 package jminusminus;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -16,6 +26,20 @@ import java.util.zip.ZipFile;
  * This class can be used to locate and load system, extension, and user-defined
  * class files from directories and zip (jar) files. The code for this class has
  * been adapted from the Kopi (http://www.dms.at/kopi/) project.
+ * <p>
+ * The classes in the archives of the path are indexed when it is constructed,
+ * and the classes of a package in its directories when a class of the package
+ * is first looked for; so looking for a class is a hash lookup, rather than a
+ * search of every entry. A class that is not found is looked for again in
+ * its package's directories, if they have changed since they were listed
+ * (as when an earlier compilation has written to one of them). The archives
+ * are kept open (the most recently used of them, up to a bound) until
+ * {@link #close()}.
+ * <p>
+ * From Java 9 on, the system classes are not in a jar (rt.jar) but in the
+ * run-time image of the JVM, which is read through the jrt file system; the
+ * modules holding a package are looked up when a class of the package is
+ * first looked for there, once for all paths.
  */
 
 class CLPath {
@@ -26,6 +50,52 @@ class CLPath {
      */
     private ArrayList<String> dirs;
 
+    /**
+     * Whether the system classes are in the run-time image of the JVM (from
+     * Java 9 on) rather than in a directory or jar of the class path.
+     */
+    private boolean systemImage;
+
+    /**
+     * Maps the packages (in internal form) that have been looked for in the
+     * run-time image to the modules holding them; none, for a package that
+     * is not in the image.
+     */
+    private static Map<String, ArrayList<String>> imagePackages =
+        new HashMap<String, ArrayList<String>>();
+
+    /**
+     * The jrt file system of the run-time image; {@code null} until it is
+     * first needed.
+     */
+    private static FileSystem imageFileSystem;
+
+    /** Most archives held open at once. */
+    private static final int MAX_OPEN_ARCHIVES = 16;
+
+    /** The class path given by java.class.path; {@code null} until used. */
+    private static CLPath defaultPath;
+
+    /**
+     * Maps the names of the classes in the class path (in the archives, and
+     * in the packages of the directories that have been listed) to the index
+     * of the first entry holding them.
+     */
+    private Map<String, Integer> classes;
+
+    /**
+     * Maps the packages that have been listed in the directories to the
+     * stamp (see {@link #stamp(String)}) of their directories when they were
+     * listed.
+     */
+    private Map<String, Long> listedPackages;
+
+    /**
+     * The archives held open, by the index of their entry, least recently
+     * used first; the least recently used is closed when there are too many.
+     */
+    private LinkedHashMap<Integer, ZipFile> archives;
+
     /**
      * Return a list of conceptual directories defining the class path.
      * 
@@ -52,13 +122,12 @@ class CLPath {
                 container.add(entries.nextToken());
             }
         } else {
-            float version = Float
-                    .parseFloat(System.getProperty("java.version"));
-            if (version > 1.1) {
-                String dir = System.getProperty("java.home")
-                        + File.separatorChar + "lib" + File.separatorChar
-                        + "rt.jar";
+            String dir = System.getProperty("java.home") + File.separatorChar
+                    + "lib" + File.separatorChar + "rt.jar";
+            if (new File(dir).isFile()) {
                 container.add(dir);
+            } else {
+                systemImage = true;
             }
         }
         return container;
@@ -106,19 +175,59 @@ class CLPath {
                     if (file.isFile()
                             && (file.getName().endsWith(".zip") || file
                                     .getName().endsWith(".jar"))) {
-                        dirs.add(file.getName());
+                        dirs.add(file.getPath());
                     } else {
                         // Wrong suffix; ignore
                     }
                 }
             }
         }
+        classes = new HashMap<String, Integer>();
+        listedPackages = new HashMap<String, Long>();
+        archives = new LinkedHashMap<Integer, ZipFile>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, ZipFile> eldest) {
+                if (size() <= MAX_OPEN_ARCHIVES) {
+                    return false;
+                }
+                try {
+                    eldest.getValue().close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+                return true;
+            }
+        };
+        indexArchives();
+    }
+
+    /**
+     * Returns the class path given by the java.class.path property, shared
+     * by all its users (so it is indexed just once). Its archives are closed
+     * when the JVM shuts down.
+     * 
+     * @return the class path.
+     */
+
+    public static CLPath defaultPath() {
+        synchronized (CLPath.class) {
+            if (defaultPath == null) {
+                CLPath path = new CLPath();
+                Runtime.getRuntime().addShutdownHook(new Thread(path::close));
+                defaultPath = path;
+            }
+            return defaultPath;
+        }
     }
 
     /**
      * Returns a CLInputStream instance for the class with specified name
      * (fully-qualified; tokens separated by '/') or {@code null} if the class 
-     * was not found.
+     * was not found. The class is looked up in the index (listing the class's
+     * package in the directories of the class path first, if it has not been
+     * listed yet), and then in the run-time image, if that is where the system
+     * classes are. The class file is read at once, so the stream holds no
+     * archive open.
      * 
      * @param name
      *            the fully-qualified name of the class -- java/util/ArrayList
@@ -128,37 +237,328 @@ class CLPath {
      */
 
     public CLInputStream loadClass(String name) {
-        CLInputStream reader = null;
-        for (int i = 0; i < dirs.size(); i++) {
-            String dir = dirs.get(i);
-            File file = new File(dir);
-            if (file.isDirectory()) {
-                File theClass = new File(dir, name.replace('/',
-                        File.separatorChar)
-                        + ".class");
-                if (theClass.canRead()) {
-                    try {
-                        reader = new CLInputStream(new BufferedInputStream(
-                                new FileInputStream(theClass)));
-                    } catch (FileNotFoundException e) {
-                        // Ignore
-                    }
+        try {
+            byte[] bytes = null;
+            Integer entry = entryFor(name);
+            if (entry != null) {
+                bytes = read(entry, name + ".class");
+            } else if (systemImage) {
+                bytes = readFromImage(name + ".class");
+            }
+            return bytes == null ? null : new CLInputStream(
+                    new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file of the class path holding the class with the specified
+     * name: its class file, in a directory of the path, or the archive it is
+     * in.
+     * 
+     * @param name
+     *            the fully-qualified name of the class.
+     * @return the name of the file; {@code null} if the class is not in an
+     *         entry of the class path.
+     */
+
+    public String fileFor(String name) {
+        Integer entry = entryFor(name);
+        if (entry == null) {
+            return null;
+        }
+        File file = new File(dirs.get(entry));
+        return file.isDirectory() ? new File(file, name.replace('/',
+                File.separatorChar) + ".class").getPath() : file.getPath();
+    }
+
+    /**
+     * Reads the specified class file from the run-time image: from the
+     * modules holding its package (see {@link #imageModules(String)}).
+     * 
+     * @param fileName
+     *            name of the class file (java/lang/String.class, say).
+     * @return the bytes of the file; {@code null} if it is not in the image.
+     * @exception IOException
+     *                if the file cannot be read.
+     */
+
+    private static byte[] readFromImage(String fileName) throws IOException {
+        String pkg = fileName.lastIndexOf('/') == -1 ? "" : fileName
+                .substring(0, fileName.lastIndexOf('/'));
+        for (String module : imageModules(pkg)) {
+            Path file = imageFileSystem().getPath("/modules", module,
+                    fileName);
+            if (Files.isRegularFile(file)) {
+                return Files.readAllBytes(file);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the modules of the run-time image holding the specified
+     * package, listing them (the first time the package is asked for) from
+     * the package's directory in the /packages directory of the image. A
+     * class of a package that is not in the image is so missed having read
+     * just one directory, and only the packages looked for are read.
+     * 
+     * @param pkg
+     *            the package, in internal form.
+     * @return the names of the modules; empty if the package is not in the
+     *         image, or the image cannot be read.
+     */
+
+    private static synchronized ArrayList<String> imageModules(String pkg) {
+        ArrayList<String> modules = imagePackages.get(pkg);
+        if (modules != null) {
+            return modules;
+        }
+        modules = new ArrayList<String>();
+        imagePackages.put(pkg, modules);
+        if (pkg.equals("")) {
+            // The default package is never in the image
+            return modules;
+        }
+        try {
+            Path dir = imageFileSystem().getPath("/packages", pkg.replace('/',
+                    '.'));
+            if (!Files.isDirectory(dir)) {
+                return modules;
+            }
+            DirectoryStream<Path> links = Files.newDirectoryStream(dir);
+            try {
+                for (Path module : links) {
+                    modules.add(module.getFileName().toString());
                 }
-            } else if (file.isFile()) {
+            } finally {
+                links.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // No (readable) image; no system classes
+            modules.clear();
+        }
+        return modules;
+    }
+
+    /**
+     * Returns the jrt file system of the run-time image, opening it the
+     * first time it is asked for.
+     * 
+     * @return the file system.
+     * @exception IOException
+     *                if there is no run-time image.
+     */
+
+    private static synchronized FileSystem imageFileSystem()
+            throws IOException {
+        if (imageFileSystem == null) {
+            try {
+                imageFileSystem = FileSystems.getFileSystem(URI
+                        .create("jrt:/"));
+            } catch (RuntimeException e) {
+                throw new IOException("no run-time image", e);
+            }
+        }
+        return imageFileSystem;
+    }
+
+    /**
+     * Returns whether the class having the specified name is looked for in
+     * the run-time image, in a package of the image: the system classes are
+     * there, the class is not in an entry of the class path, and the image
+     * holds the class's package.
+     * 
+     * @param name
+     *            the fully-qualified name of the class.
+     * @return {@code true} if the class is looked for in a package of the
+     *         image, and {@code false} otherwise.
+     */
+
+    public boolean inRunTimeImage(String name) {
+        return systemImage && entryFor(name) == null
+                && !imageModules(name.lastIndexOf('/') == -1 ? "" : name
+                        .substring(0, name.lastIndexOf('/'))).isEmpty();
+    }
+
+    /**
+     * Closes the archives held open.
+     */
+
+    public void close() {
+        synchronized (archives) {
+            for (ZipFile zip : archives.values()) {
                 try {
-                    ZipFile zip = new ZipFile(dir);
-                    ZipEntry entry = zip.getEntry(name + ".class");
-                    if (entry != null) {
-                        reader = new CLInputStream(zip.getInputStream(entry));
-                    }
+                    zip.close();
                 } catch (IOException e) {
                     // Ignore
                 }
-            } else {
-                // Bogus entry; ignore
             }
+            archives.clear();
+        }
+    }
+
+    /**
+     * Indexes the classes in the archives of the class path.
+     */
+
+    private void indexArchives() {
+        for (int i = 0; i < dirs.size(); i++) {
+            File file = new File(dirs.get(i));
+            if (!file.isFile()) {
+                continue;
+            }
+            try {
+                ZipFile zip = archive(i);
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    String entry = entries.nextElement().getName();
+                    if (entry.endsWith(".class")) {
+                        addClass(entry.substring(0, entry.length() - 6), i);
+                    }
+                }
+            } catch (IOException e) {
+                // Not an archive; ignore
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the class path entry holding the class having the
+     * specified name, listing its package in the directories of the class
+     * path if that has not been done yet, or if the class is not found and
+     * the directories have changed since.
+     * 
+     * @param name
+     *            the fully-qualified name of the class.
+     * @return the index of the entry; {@code null} if there is none.
+     */
+
+    private synchronized Integer entryFor(String name) {
+        String pkg = name.lastIndexOf('/') == -1 ? "" : name.substring(0,
+                name.lastIndexOf('/'));
+        Long listed = listedPackages.get(pkg);
+        if (listed == null || !classes.containsKey(name)
+                && listed.longValue() != stamp(pkg)) {
+            listPackage(pkg);
+        }
+        return classes.get(name);
+    }
+
+    /**
+     * Indexes the classes of the specified package in the directories of the
+     * class path, recording the stamp of the directories.
+     * 
+     * @param pkg
+     *            the package, in internal form.
+     */
+
+    private void listPackage(String pkg) {
+        listedPackages.put(pkg, stamp(pkg));
+        for (int i = 0; i < dirs.size(); i++) {
+            File dir = new File(dirs.get(i), pkg.replace('/',
+                    File.separatorChar));
+            String[] files = new File(dirs.get(i)).isDirectory() ? dir.list()
+                    : null;
+            if (files == null) {
+                continue;
+            }
+            for (String file : files) {
+                if (file.endsWith(".class")) {
+                    addClass((pkg.equals("") ? "" : pkg + "/")
+                            + file.substring(0, file.length() - 6), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stamp of the directories of the specified package in the
+     * directories of the class path, which changes when a class file is
+     * added to (or removed from) any of them.
+     * 
+     * @param pkg
+     *            the package, in internal form.
+     * @return the stamp, made of the directories' modification times.
+     */
+
+    private long stamp(String pkg) {
+        long stamp = 0;
+        for (String entry : dirs) {
+            stamp = 31 * stamp + new File(entry, pkg.replace('/',
+                    File.separatorChar)).lastModified();
+        }
+        return stamp;
+    }
+
+    /**
+     * Records that the class having the specified name is in the specified
+     * class path entry, unless it is in an earlier one.
+     * 
+     * @param name
+     *            the fully-qualified name of the class.
+     * @param entry
+     *            index of the class path entry.
+     */
+
+    private void addClass(String name, int entry) {
+        classes.merge(name, entry, Math::min);
+    }
+
+    /**
+     * Reads the specified file from the specified class path entry.
+     * 
+     * @param entry
+     *            index of the class path entry.
+     * @param fileName
+     *            name of the file, relative to the entry.
+     * @return the bytes of the file.
+     * @exception IOException
+     *                if the file cannot be read.
+     */
+
+    private byte[] read(int entry, String fileName) throws IOException {
+        File file = new File(dirs.get(entry));
+        if (file.isDirectory()) {
+            return Files.readAllBytes(new File(file, fileName.replace('/',
+                    File.separatorChar)).toPath());
+        }
+        synchronized (archives) {
+            ZipFile zip = archive(entry);
+            ZipEntry zipEntry = zip.getEntry(fileName);
+            if (zipEntry == null) {
+                throw new FileNotFoundException(fileName);
+            }
+            InputStream in = zip.getInputStream(zipEntry);
+            try {
+                return in.readAllBytes();
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the archive that is the specified class path entry, opening it
+     * if it is not open.
+     * 
+     * @param entry
+     *            index of the class path entry.
+     * @return the archive.
+     * @exception IOException
+     *                if the archive cannot be opened.
+     */
+
+    private ZipFile archive(int entry) throws IOException {
+        synchronized (archives) {
+            ZipFile zip = archives.get(entry);
+            if (zip == null) {
+                zip = new ZipFile(dirs.get(entry));
+                archives.put(entry, zip);
+            }
+            return zip;
         }
-        return reader;
     }
 
 }
@@ -0,0 +1,338 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A character stream for the JavaCC token manager over the whole text of a
+ * source file, read and decoded at once into a {@link CharBuffer}; in place
+ * of a {@link SimpleCharStream} over a {@code FileInputStream}, which decodes
+ * the file a character at a time into a buffer that it expands (copying)
+ * whenever a token will not fit.
+ * <p>
+ * Nothing is ever read beyond the buffer, and so nothing is copied: reading
+ * a character is just an index into the buffer, and backing up just moves
+ * the index back. Rather than recording the line and column of every
+ * character read, the stream works them out for the positions the token
+ * manager asks about, by moving a cursor forward over the text; the cursor
+ * is moved to the start of each token as it begins (and where it is then
+ * remembered), and a position within the token is reached from there. So
+ * every character of the text is gone over about once. The lines and
+ * columns are just those a SimpleCharStream would give.
+ * <p>
+ * It pays off for sources of long tokens (comments and strings), which make
+ * a SimpleCharStream expand its buffer again and again; for ordinary code it
+ * is no faster, and so it is used (by {@link JavaCCMain}) only when asked
+ * for, with {@code -buffer}.
+ */
+
+class CharBufferStream extends SimpleCharStream {
+
+    /** The text of the source file. */
+    private char[] text;
+
+    /** Number of characters in the text. */
+    private int count;
+
+    /** Position of the cursor in the text: the last character gone over. */
+    private int cursor;
+
+    /** Line of the character at the cursor. */
+    private int cursorLine;
+
+    /** Column of the character at the cursor. */
+    private int cursorColumn;
+
+    /** Whether the character at the cursor is a carriage return. */
+    private boolean cursorIsCR;
+
+    /** Whether the character at the cursor is a line feed. */
+    private boolean cursorIsLF;
+
+    /** Where the cursor was at the start of the current token. */
+    private int beginCursor;
+
+    /** Line of the start of the current token. */
+    private int beginLine;
+
+    /** Column of the start of the current token. */
+    private int beginColumn;
+
+    /** Whether the start of the current token is a carriage return. */
+    private boolean beginIsCR;
+
+    /** Whether the start of the current token is a line feed. */
+    private boolean beginIsLF;
+
+    /**
+     * Constructs a stream over the specified text.
+     *
+     * @param text
+     *            the text (as produced by decoding).
+     */
+
+    public CharBufferStream(CharBuffer text) {
+        super((java.io.Reader) null, 1, 1, 1);
+        this.text = text.array();
+        count = text.limit();
+        bufpos = -1;
+        tokenBegin = 0;
+        cursor = -1;
+        cursorLine = 1;
+        cursorColumn = 0;
+        beginCursor = -1;
+        beginLine = 1;
+        beginColumn = 0;
+    }
+
+    /**
+     * Returns a stream over the text of the specified file, read into a
+     * (heap) buffer and decoded in the platform's default charset (as a
+     * SimpleCharStream over a FileInputStream would decode it).
+     *
+     * @param fileName
+     *            name of the file.
+     * @return the stream.
+     * @exception IOException
+     *                if the file cannot be read.
+     */
+
+    public static CharBufferStream open(String fileName) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.READ);
+        try {
+            ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // Read on
+            }
+            bytes.flip();
+            return new CharBufferStream(Charset.defaultCharset().decode(
+                    bytes));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public char BeginToken() throws IOException {
+        tokenBegin = -1;
+        char c = readChar();
+        tokenBegin = bufpos;
+        moveTo(tokenBegin);
+        beginCursor = cursor;
+        beginLine = cursorLine;
+        beginColumn = cursorColumn;
+        beginIsCR = cursorIsCR;
+        beginIsLF = cursorIsLF;
+        return c;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public char readChar() throws IOException {
+        if (++bufpos >= count) {
+            // At the end of the text; stay on its last character
+            --bufpos;
+            if (tokenBegin == -1) {
+                tokenBegin = bufpos;
+            }
+            throw new IOException();
+        }
+        return text[bufpos];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public void backup(int amount) {
+        bufpos -= amount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    @Deprecated
+    public int getColumn() {
+        return getEndColumn();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    @Deprecated
+    public int getLine() {
+        return getEndLine();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public int getEndColumn() {
+        return column(bufpos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public int getEndLine() {
+        return line(bufpos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public int getBeginColumn() {
+        return column(tokenBegin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public int getBeginLine() {
+        return line(tokenBegin);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public String GetImage() {
+        return new String(text, tokenBegin, bufpos - tokenBegin + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public char[] GetSuffix(int len) {
+        char[] suffix = new char[len];
+        System.arraycopy(text, bufpos - len + 1, suffix, 0, len);
+        return suffix;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public void Done() {
+        text = null;
+    }
+
+    /**
+     * Rebases the lines and columns from the start of the current token on:
+     * the start is given the specified line and column, and the positions
+     * after it are worked out from there, as if the text began at the start.
+     * (The generated token manager doesn't call this; it is for lexical
+     * actions.)
+     *
+     * @param newLine
+     *            the new line of the start of the token.
+     * @param newCol
+     *            the new column of the start of the token.
+     */
+
+    public void adjustBeginLineColumn(int newLine, int newCol) {
+        moveTo(tokenBegin);
+        cursorLine = newLine;
+        cursorColumn = newCol;
+        beginCursor = cursor;
+        beginLine = cursorLine;
+        beginColumn = cursorColumn;
+        beginIsCR = cursorIsCR;
+        beginIsLF = cursorIsLF;
+    }
+
+    /**
+     * Returns the line of the character at the specified position.
+     *
+     * @param position
+     *            the position; -1 (in an empty text) for none.
+     * @return the line; 0 for none, as in a SimpleCharStream over an empty
+     *         file.
+     */
+
+    private int line(int position) {
+        if (position < 0) {
+            return 0;
+        }
+        moveTo(position);
+        return cursorLine;
+    }
+
+    /**
+     * Returns the column of the character at the specified position.
+     *
+     * @param position
+     *            the position; -1 (in an empty text) for none.
+     * @return the column; 0 for none.
+     */
+
+    private int column(int position) {
+        if (position < 0) {
+            return 0;
+        }
+        moveTo(position);
+        return cursorColumn;
+    }
+
+    /**
+     * Moves the cursor to the specified position, working out the line and
+     * column there as SimpleCharStream does (a tab moving on to the next tab
+     * stop, and a CR, LF or CR LF ending a line). The cursor moves forward
+     * from where it is or, if the position is behind it, from the start of
+     * the current token (or of the text).
+     *
+     * @param position
+     *            the position.
+     */
+
+    private void moveTo(int position) {
+        if (position < cursor && position >= beginCursor) {
+            cursor = beginCursor;
+            cursorLine = beginLine;
+            cursorColumn = beginColumn;
+            cursorIsCR = beginIsCR;
+            cursorIsLF = beginIsLF;
+        } else if (position < cursor) {
+            cursor = -1;
+            cursorLine = 1;
+            cursorColumn = 0;
+            cursorIsCR = false;
+            cursorIsLF = false;
+        }
+        while (cursor < position) {
+            char c = text[++cursor];
+            cursorColumn++;
+            if (cursorIsLF || cursorIsCR && c != '\n') {
+                cursorLine++;
+                cursorColumn = 1;
+            }
+            cursorIsCR = c == '\r';
+            cursorIsLF = c == '\n';
+            if (c == '\t') {
+                cursorColumn--;
+                cursorColumn += tabSize - (cursorColumn % tabSize);
+            }
+        }
+    }
+
+}
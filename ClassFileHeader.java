@@ -0,0 +1,221 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static jminusminus.CLConstants.*;
+
+/**
+ * The header of a class file, located through a {@link CLPath}: its access
+ * flags, and the names of the class, its superclass and its interfaces. Unlike
+ * {@link CLAbsorber}, which builds a {@link CLFile} of the whole class, this
+ * reads only as far as the interfaces, skipping over the constant pool
+ * entries and decoding just the names it needs; and it knows the constant
+ * pool entries of current class files (method handles, dynamic constants,
+ * modules and packages).
+ * <p>
+ * Reading the header of a class tells the compiler that the class exists
+ * (and what it is called) without loading it into the compiler's JVM.
+ */
+
+class ClassFileHeader {
+
+    /** Magic number at the start of a class file. */
+    private static final long MAGIC = 0xCAFEBABEL;
+
+    /** The tags of the constant pool entries not known to CLConstants. */
+    private static final int CONSTANT_MethodHandle = 15,
+            CONSTANT_MethodType = 16, CONSTANT_Dynamic = 17,
+            CONSTANT_InvokeDynamic = 18, CONSTANT_Module = 19,
+            CONSTANT_Package = 20;
+
+    /** Access flags of the class. */
+    private int accessFlags;
+
+    /** Name of the class, in internal form (java/lang/String, say). */
+    private String name;
+
+    /** Name of the superclass, in internal form; {@code null} if none. */
+    private String superName;
+
+    /** Names of the interfaces, in internal form. */
+    private ArrayList<String> interfaceNames;
+
+    /**
+     * Reads the header of a class file from the specified bytes.
+     *
+     * @param bytes
+     *            the bytes of the class file.
+     * @exception IOException
+     *                if the bytes are not those of a class file.
+     */
+
+    private ClassFileHeader(byte[] bytes) throws IOException {
+        CLInputStream in = new CLInputStream(new ByteArrayInputStream(bytes));
+        if (in.readUnsignedInt() != MAGIC) {
+            throw new IOException("bad magic number");
+        }
+        in.skipBytes(4); // Minor and major versions
+
+        // Note where the Utf8 entries are, and the names of the
+        // Class entries; skip the rest
+        int count = in.readUnsignedShort();
+        int[] utf8s = new int[count];
+        int[] classNames = new int[count];
+        for (int i = 1; i < count; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+            case CONSTANT_Utf8:
+                utf8s[i] = bytes.length - in.available();
+                in.skipBytes(in.readUnsignedShort());
+                break;
+            case CONSTANT_Class:
+                classNames[i] = in.readUnsignedShort();
+                break;
+            case CONSTANT_String:
+            case CONSTANT_MethodType:
+            case CONSTANT_Module:
+            case CONSTANT_Package:
+                in.skipBytes(2);
+                break;
+            case CONSTANT_MethodHandle:
+                in.skipBytes(3);
+                break;
+            case CONSTANT_Integer:
+            case CONSTANT_Float:
+            case CONSTANT_Fieldref:
+            case CONSTANT_Methodref:
+            case CONSTANT_InterfaceMethodref:
+            case CONSTANT_NameAndType:
+            case CONSTANT_Dynamic:
+            case CONSTANT_InvokeDynamic:
+                in.skipBytes(4);
+                break;
+            case CONSTANT_Long:
+            case CONSTANT_Double:
+                // Takes up two entries
+                in.skipBytes(8);
+                i++;
+                break;
+            default:
+                throw new IOException("bad constant pool tag " + tag);
+            }
+        }
+
+        accessFlags = in.readUnsignedShort();
+        name = className(bytes, utf8s, classNames, in.readUnsignedShort());
+        superName = className(bytes, utf8s, classNames, in
+                .readUnsignedShort());
+        interfaceNames = new ArrayList<String>();
+        for (int i = in.readUnsignedShort(); i > 0; i--) {
+            interfaceNames.add(className(bytes, utf8s, classNames, in
+                    .readUnsignedShort()));
+        }
+    }
+
+    /**
+     * Returns the header of the class having the specified name, found on
+     * the specified class path.
+     *
+     * @param classPath
+     *            the class path.
+     * @param name
+     *            the fully qualified name of the class (java.lang.String,
+     *            say).
+     * @return the header; {@code null} if there is no class file for the
+     *         class, or it cannot be read, or it is for another class (as
+     *         may happen in a file system that ignores case).
+     */
+
+    public static ClassFileHeader read(CLPath classPath, String name) {
+        String internalName = name.replace('.', '/');
+        CLInputStream in = classPath.loadClass(internalName);
+        if (in == null) {
+            return null;
+        }
+        try {
+            ClassFileHeader header;
+            try {
+                header = new ClassFileHeader(in.readAllBytes());
+            } finally {
+                in.close();
+            }
+            return header.name.equals(internalName) ? header : null;
+        } catch (IOException | RuntimeException e) {
+            // Not a (readable) class file
+            return null;
+        }
+    }
+
+    /**
+     * Returns the access flags of the class.
+     *
+     * @return the access flags.
+     */
+
+    public int accessFlags() {
+        return accessFlags;
+    }
+
+    /**
+     * Returns the name of the class, in internal form.
+     *
+     * @return the name.
+     */
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the superclass, in internal form.
+     *
+     * @return the name; {@code null} for java/lang/Object (or a module).
+     */
+
+    public String superName() {
+        return superName;
+    }
+
+    /**
+     * Returns the names of the interfaces the class implements, in internal
+     * form.
+     *
+     * @return the names.
+     */
+
+    public ArrayList<String> interfaceNames() {
+        return interfaceNames;
+    }
+
+    /**
+     * Returns the name given by the specified Class entry of a constant pool.
+     *
+     * @param bytes
+     *            the bytes of the class file.
+     * @param utf8s
+     *            the offsets of the Utf8 entries in the bytes, by index.
+     * @param classNames
+     *            the indices of the names of the Class entries, by index.
+     * @param index
+     *            index of the Class entry; 0 for none.
+     * @return the name; {@code null} for none.
+     * @exception IOException
+     *                if the name cannot be decoded.
+     */
+
+    private static String className(byte[] bytes, int[] utf8s,
+            int[] classNames, int index) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        int offset = utf8s[classNames[index]];
+        return new DataInputStream(new ByteArrayInputStream(bytes, offset,
+                bytes.length - offset)).readUTF();
+    }
+
+}
@@ -0,0 +1,132 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * A resident compile server, started with {@code java jminusminus.Main -server
+ * [<port>]}. It serves compile requests read from STDIN (or, given a port,
+ * from connections to a socket on the local host), one at a time, so the
+ * compiler, the {@link Type}s for JDK classes and the classes loaded by name
+ * all stay warm from one request to the next.
+ * <p>
+ * A request is a line holding the options and source files that would be
+ * given to {@link Main}; an empty line is ignored, and {@code quit} ends the
+ * session. The reply to a request is a line for each line the compilation
+ * wrote to STDOUT ({@code out <line>}), a line for each diagnostic
+ * ({@code diagnostic <line>}), a line for each file written
+ * ({@code output <file>}), and finally a line saying {@code ok} or
+ * {@code error}.
+ */
+
+class CompileServer {
+
+    /**
+     * Serves the requests read from the specified input stream, writing the
+     * replies to the specified output stream, until the input ends or a
+     * {@code quit} request is read.
+     *
+     * @param in
+     *            stream from which requests are read.
+     * @param out
+     *            stream to which replies are written.
+     */
+
+    public static void serve(InputStream in, PrintStream out) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+        try {
+            String request;
+            while ((request = reader.readLine()) != null) {
+                request = request.trim();
+                if (request.equals("")) {
+                    continue;
+                }
+                if (request.equals("quit")) {
+                    break;
+                }
+                reply(request, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the requests from connections to a socket bound to the specified
+     * port on the local host, one connection at a time.
+     *
+     * @param port
+     *            the port.
+     */
+
+    public static void serve(int port) {
+        try {
+            ServerSocket server = new ServerSocket(port, 50, InetAddress
+                    .getLoopbackAddress());
+            while (true) {
+                Socket socket = server.accept();
+                try {
+                    serve(socket.getInputStream(), new PrintStream(socket
+                            .getOutputStream()));
+                } finally {
+                    socket.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compiles as directed by the specified request, in a session of its own,
+     * and writes the reply.
+     *
+     * @param request
+     *            the options and source files, separated by white space.
+     * @param out
+     *            stream to which the reply is written.
+     */
+
+    private static void reply(String request, PrintStream out) {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        Session session = new Session(new PrintStream(stdout), new PrintStream(
+                stderr));
+        session.host();
+        boolean errorHasOccurred;
+        try {
+            errorHasOccurred = Main.compile(request.split("\\s+"), session);
+        } catch (RuntimeException | LinkageError e) {
+            // Don't let a compiler failure bring the server down
+            session.err().println("Compiler failure: " + e);
+            errorHasOccurred = true;
+        }
+        session.out().flush();
+        session.err().flush();
+        for (String line : stdout.toString().split("\n")) {
+            if (!line.equals("")) {
+                out.println("out " + line);
+            }
+        }
+        for (String line : stderr.toString().split("\n")) {
+            if (!line.equals("")) {
+                out.println("diagnostic " + line);
+            }
+        }
+        for (String file : session.outputs()) {
+            out.println("output " + file);
+        }
+        out.println(errorHasOccurred ? "error" : "ok");
+    }
+
+}
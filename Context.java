@@ -2,9 +2,11 @@
 
 package jminusminus;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A Context encapsulates the environment in which an AST is analyzed. It
@@ -86,7 +88,7 @@ class Context {
 
     public void addEntry(int line, String name, IDefn definition) {
         if (entries.containsKey(name)) {
-            JAST.compilationUnit.reportSemanticError(line, "redefining name: "
+            JAST.compilationUnit().reportSemanticError(line, "redefining name: "
                     + name);
         } else {
             entries.put(name, definition);
@@ -221,22 +223,174 @@ class Context {
 }
 
 /**
- * The compilation unit context is always the outermost context and is where
- * imported types and locally defined types (classes) are declared.
+ * The global context is the outermost context, surrounding the compilation unit
+ * contexts of all the units compiled together in one invocation of the
+ * compiler; it is the part of the symbol table those units share. It declares
+ * every type declared by the units under its fully qualified name, so that a
+ * unit can refer to a type declared in another, and it caches the types loaded
+ * by name, so that each type is loaded at most once. A type is loaded only if
+ * its class file is found on the class path, and is not initialized.
  */
 
-class CompilationUnitContext extends Context {
+class GlobalContext extends Context {
 
     /**
-     * Constructs a new compilation unit context. There are no surrounding
-     * contexts.
+     * Maps fully qualified names to the types loaded by name from the JDK.
+     * The JDK's classes don't change while the compiler runs, so this is
+     * shared by all global contexts, and stays warm from one compilation to
+     * the next in a long-running compiler.
      */
+    private static Map<String, Type> jdkTypes =
+        new ConcurrentHashMap<String, Type>();
 
-    public CompilationUnitContext() {
+    /**
+     * Maps fully qualified names to the other types loaded by name in this
+     * context; {@code Type.ANY} for names that could not be loaded. A class
+     * may be added to the class path between compilations (by an earlier
+     * compilation of a compile server, say), so these are not shared.
+     */
+    private Map<String, Type> loadedTypes =
+        new ConcurrentHashMap<String, Type>();
+
+    /**
+     * Constructs a new global context. There are no surrounding contexts.
+     */
+
+    public GlobalContext() {
         super(null, null, null);
+    }
+
+    /**
+     * Returns the definition for a type name in the global context.
+     * 
+     * @param name
+     *            the fully qualified name of the type.
+     * @return the definition; {@code null}, if not found.
+     */
+
+    public Type lookupType(String name) {
+        TypeNameDefn defn = (TypeNameDefn) lookup(name);
+        return defn == null ? null : defn.type();
+    }
+
+    /**
+     * Adds the type to the global context, under its fully qualified name.
+     * 
+     * @param line
+     *            line number of type declaration.
+     * @param type
+     *            the type we are declaring.
+     */
+
+    public void addType(int line, Type type) {
+        addEntry(line, type.toString(), new TypeNameDefn(type));
+    }
+
+    /**
+     * Returns the types declared in this context that belong to the specified
+     * package.
+     * 
+     * @param packageName
+     *            the package name, for example java.lang; "" for the default
+     *            package.
+     * @return the types in the package.
+     */
+
+    public ArrayList<Type> typesInPackage(String packageName) {
+        ArrayList<Type> types = new ArrayList<Type>();
+        for (String name : names()) {
+            String pkg = name.lastIndexOf('.') == -1 ? "" : name.substring(0,
+                    name.lastIndexOf('.'));
+            if (pkg.equals(packageName)) {
+                types.add(lookupType(name));
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Returns the type having the specified fully qualified name, loading it
+     * the first time it is asked for (in this context or, for a type of the
+     * JDK, in any). The header of the type's class file on the class path
+     * is read first (see {@link ClassFileHeader}), so a name for which there
+     * is no class is never looked for by a class loader, and the file a type
+     * is read from is recorded as an input of the current session (so the
+     * output of the compilation is known to depend on it); a name in a package
+     * of the JDK's run-time image is left to the class loader, which looks
+     * for it in just the module holding the package, so the class file of a
+     * JDK type is not read twice. The class is loaded without being
+     * initialized, so no static initializer is run in the compiler's JVM.
+     * 
+     * @param name
+     *            the fully qualified name of the type.
+     * @return the type; {@code null}, if it cannot be loaded.
+     */
+
+    public Type loadType(String name) {
+        Type type = jdkTypes.get(name);
+        if (type != null) {
+            return type;
+        }
+        type = loadedTypes.computeIfAbsent(name, key -> {
+            CLPath classPath = CLPath.defaultPath();
+            String internalName = key.replace('.', '/');
+            if (!classPath.inRunTimeImage(internalName)) {
+                if (ClassFileHeader.read(classPath, key) == null) {
+                    return Type.ANY;
+                }
+                Session.current().addInput(classPath.fileFor(internalName));
+            }
+            try {
+                return Type.typeFor(Class.forName(key, false,
+                        GlobalContext.class.getClassLoader()));
+            } catch (Exception | LinkageError e) {
+                // Remember the failure, so we don't try again
+                return Type.ANY;
+            }
+        });
+        if (type == Type.ANY) {
+            return null;
+        }
+        ClassLoader loader = type.classRep().getClassLoader();
+        if (loader == null || loader == ClassLoader.getPlatformClassLoader()) {
+            jdkTypes.putIfAbsent(name, type);
+        }
+        return type;
+    }
+
+}
+
+/**
+ * The compilation unit context is always the outermost context of a unit (just
+ * inside the global context) and is where imported types and locally defined
+ * types (classes) are declared.
+ */
+
+class CompilationUnitContext extends Context {
+
+    /**
+     * Constructs a new compilation unit context. Its only surrounding context
+     * is the global context shared by all the units compiled together.
+     * 
+     * @param globalContext
+     *            the global context.
+     */
+
+    public CompilationUnitContext(GlobalContext globalContext) {
+        super(globalContext, null, null);
         compilationUnitContext = this;
     }
 
+    /**
+     * Returns the global context surrounding this compilation unit context.
+     * 
+     * @return the global context.
+     */
+
+    public GlobalContext globalContext() {
+        return (GlobalContext) surroundingContext;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,80 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+/**
+ * A diagnostic (error) reported by the compiler: the name of the source file
+ * and the line in it where the error was found, and a message identifying the
+ * error. Errors found in code emission have no source file or line.
+ */
+
+public class Diagnostic {
+
+    /** Name of the source file; {@code null} if none. */
+    private String fileName;
+
+    /** Line in the source file; 0 if none. */
+    private int line;
+
+    /** Message identifying the error. */
+    private String message;
+
+    /**
+     * Constructs a diagnostic.
+     * 
+     * @param fileName
+     *            name of the source file; {@code null} if none.
+     * @param line
+     *            line in the source file; 0 if none.
+     * @param message
+     *            message identifying the error.
+     */
+
+    public Diagnostic(String fileName, int line, String message) {
+        this.fileName = fileName;
+        this.line = line;
+        this.message = message;
+    }
+
+    /**
+     * Returns the name of the source file.
+     * 
+     * @return the name of the source file; {@code null} if none.
+     */
+
+    public String fileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the line in the source file.
+     * 
+     * @return the line; 0 if none.
+     */
+
+    public int line() {
+        return line;
+    }
+
+    /**
+     * Returns the message identifying the error.
+     * 
+     * @return the message.
+     */
+
+    public String message() {
+        return message;
+    }
+
+    /**
+     * Returns the diagnostic as it is reported on STDERR.
+     * 
+     * @return the diagnostic as a string.
+     */
+
+    public String toString() {
+        return fileName == null ? message : String.format("%s:%d: %s",
+                fileName, line, message);
+    }
+
+}
@@ -0,0 +1,153 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A programmatic entry point to the compiler that works entirely in memory:
+ * it takes the text of the sources, and returns the bytes of the classes
+ * generated for them along with the diagnostics reported, without reading or
+ * writing any files. Each compilation is done in a {@link Session} of its
+ * own, so any number of them may run concurrently.
+ */
+
+public class InMemoryCompiler {
+
+    /**
+     * The result of an in-memory compilation.
+     */
+
+    public static class Result {
+
+        /** Maps the names of the generated classes to their bytes. */
+        private Map<String, byte[]> classes;
+
+        /** The diagnostics reported. */
+        private List<Diagnostic> diagnostics;
+
+        /**
+         * Constructs a result.
+         * 
+         * @param classes
+         *            maps the names of the generated classes to their bytes.
+         * @param diagnostics
+         *            the diagnostics reported.
+         */
+
+        private Result(Map<String, byte[]> classes,
+                List<Diagnostic> diagnostics) {
+            this.classes = classes;
+            this.diagnostics = diagnostics;
+        }
+
+        /**
+         * Returns the generated classes; there are none if an error has
+         * occurred.
+         * 
+         * @return maps the (fully qualified) names of the classes to their
+         *         bytes.
+         */
+
+        public Map<String, byte[]> classes() {
+            return classes;
+        }
+
+        /**
+         * Returns the diagnostics reported.
+         * 
+         * @return the diagnostics.
+         */
+
+        public List<Diagnostic> diagnostics() {
+            return diagnostics;
+        }
+
+        /**
+         * Has an error occurred?
+         * 
+         * @return {@code true} if an error has occurred, and {@code false}
+         *         otherwise.
+         */
+
+        public boolean errorHasOccurred() {
+            return !diagnostics.isEmpty();
+        }
+
+    }
+
+    /**
+     * Compiles the specified sources, together.
+     * 
+     * @param sources
+     *            maps the names of the sources (used in diagnostics) to their
+     *            text.
+     * @return the result of the compilation.
+     */
+
+    public static Result compile(Map<String, String> sources) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Session session = new Session(discard, discard);
+        session.keepClasses();
+        Session previous = Session.current();
+        session.makeCurrent();
+        try {
+            if (compile(sources, session)) {
+                return new Result(new TreeMap<String, byte[]>(),
+                        new ArrayList<Diagnostic>(session.diagnostics()));
+            }
+            return new Result(new TreeMap<String, byte[]>(session.classes()),
+                    new ArrayList<Diagnostic>(session.diagnostics()));
+        } finally {
+            previous.makeCurrent();
+        }
+    }
+
+    /**
+     * Compiles the specified sources in the specified session, which is the
+     * current one.
+     * 
+     * @param sources
+     *            maps the names of the sources to their text.
+     * @param session
+     *            the compilation session.
+     * @return {@code true} if an error has occurred and {@code false}
+     *         otherwise.
+     */
+
+    private static boolean compile(Map<String, String> sources,
+            Session session) {
+        ArrayList<JCompilationUnit> asts = new ArrayList<JCompilationUnit>();
+        boolean errorHasOccurred = false;
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            Parser parser = new Parser(new LookaheadScanner(source.getKey(),
+                    new StringReader(source.getValue())));
+            asts.add(parser.compilationUnit());
+            errorHasOccurred |= parser.errorHasOccurred();
+        }
+        if (errorHasOccurred) {
+            return true;
+        }
+        session.declareTypes(asts);
+        if (Main.errorHasOccurredIn(asts)) {
+            return true;
+        }
+        session.preAnalyze(asts);
+        if (Main.errorHasOccurredIn(asts)) {
+            return true;
+        }
+        session.analyze(asts);
+        if (Main.errorHasOccurredIn(asts)) {
+            return true;
+        }
+        session.codegen(asts, false, null);
+        return Main.errorHasOccurredIn(asts);
+    }
+
+}
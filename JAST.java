@@ -9,8 +9,12 @@ package jminusminus;
 
 abstract class JAST {
 
-    /** Current compilation unit (set in JCompilationUnit()). */
-    public static JCompilationUnit compilationUnit;
+    /**
+     * Current compilation unit of each thread (set in JCompilationUnit()). 
+     * Separate units may be analyzed at the same time on different threads.
+     */
+    private static ThreadLocal<JCompilationUnit> compilationUnit = 
+        new ThreadLocal<JCompilationUnit>();
 
     /** Line in which the source for the AST was found. */
     protected int line;
@@ -24,6 +28,31 @@ abstract class JAST {
 
     protected JAST(int line) {
         this.line = line;
+        Stats stats = Session.current().stats();
+        if (stats != null) {
+            stats.count("AST nodes", 1);
+        }
+    }
+
+    /**
+     * Returns the compilation unit being worked on by the current thread.
+     * 
+     * @return the current compilation unit.
+     */
+
+    public static JCompilationUnit compilationUnit() {
+        return compilationUnit.get();
+    }
+
+    /**
+     * Sets the compilation unit being worked on by the current thread.
+     * 
+     * @param unit
+     *            the current compilation unit.
+     */
+
+    protected static void setCompilationUnit(JCompilationUnit unit) {
+        compilationUnit.set(unit);
     }
 
     /**
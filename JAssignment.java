@@ -66,7 +66,7 @@ class JAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
         } else {
             lhs = (JExpression) ((JLhs) lhs).analyzeLhs(context);
@@ -142,7 +142,7 @@ class JPlusAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -163,7 +163,7 @@ class JPlusAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for +=: " + lhs.type());
         }
         return this;
@@ -234,7 +234,7 @@ class JDecAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -255,7 +255,7 @@ class JDecAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for -=: " + lhs.type());
         }
         return this;
@@ -333,7 +333,7 @@ class JStarAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -354,7 +354,7 @@ class JStarAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for *=: " + lhs.type());
         }
         return this;
@@ -420,7 +420,7 @@ class JDivAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
          if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -441,7 +441,7 @@ class JDivAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for /=: " + lhs.type());
         }
         return this;
@@ -508,7 +508,7 @@ class JModeAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
          if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -529,7 +529,7 @@ class JModeAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for %=: " + lhs.type());
         }
         return this;
@@ -596,7 +596,7 @@ class JRShiftAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
 	 if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -608,7 +608,7 @@ class JRShiftAssignOp extends JAssignment {
             type = lhs.type();
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for >>=: " + lhs.type());
         }
         return this;
@@ -674,7 +674,7 @@ class JRRShiftAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
        	 if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -686,7 +686,7 @@ class JRRShiftAssignOp extends JAssignment {
             type = lhs.type();
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for >>>=: " + lhs.type());
         }
         return this;
@@ -749,7 +749,7 @@ class JLShiftAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -761,7 +761,7 @@ class JLShiftAssignOp extends JAssignment {
             type = lhs.type();
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for <<=: " + lhs.type());
         }
         return this;
@@ -824,7 +824,7 @@ class JAndAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -845,7 +845,7 @@ class JAndAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for -=: " + lhs.type());
         }
         return this;
@@ -908,7 +908,7 @@ class JOrAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -929,7 +929,7 @@ class JOrAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for -=: " + lhs.type());
         }
         return this;
@@ -993,7 +993,7 @@ class JXorAssignOp extends JAssignment {
 
     public JExpression analyze(Context context) {
         if (!(lhs instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Illegal lhs for assignment");
             return this;
         } else {
@@ -1014,7 +1014,7 @@ class JXorAssignOp extends JAssignment {
             type = Type.DOUBLE;
         }
 	else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid lhs type for -=: " + lhs.type());
         }
         return this;
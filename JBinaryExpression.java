@@ -117,7 +117,7 @@ class JPlusOp extends JBinaryExpression {
         }
 	else {
             type = Type.ANY;
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Invalid operand types for +");
         }
         return this;
@@ -126,8 +126,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
      */
 
     public void declareThisType(Context context) {
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ? name
-                : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ? name
+                : JAST.compilationUnit().packageName() + "/" + name;
         CLEmitter partial = new CLEmitter(false);
         partial.addClass(mods, qualifiedName, Type.OBJECT.jvmName(), null,
                 false); // Object for superClass, just for now
@@ -156,7 +156,7 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         // violated, so we can't defer these checks to analyze()
         thisType.checkAccess(line, superType);
         if (superType.isFinal()) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Cannot extend a final type: %s", superType.toString());
         }
 
@@ -164,8 +164,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
         CLEmitter partial = new CLEmitter(false);
 
         // Add the class header to the partial class
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ? name
-                : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ? name
+                : JAST.compilationUnit().packageName() + "/" + name;
         partial.addClass(mods, qualifiedName, superType.jvmName(), null, false);
 
         // Pre-analyze the members and add them to the partial
@@ -183,11 +183,19 @@ class JClassDeclaration extends JAST implements JTypeDecl {
             codegenPartialImplicitConstructor(partial);
         }
 
+        // Record the signature of this type, that is the bytes of
+        // the (partial) class
+        byte[] signature = partial.toBytes();
+        if (signature != null) {
+            Session.current().addSignature(qualifiedName.replace("/", "."),
+                    signature);
+        }
+
         // Get the Class rep for the (partial) class and make it
         // the
         // representation for this type
         Type id = this.context.lookupType(name);
-        if (id != null && !JAST.compilationUnit.errorHasOccurred()) {
+        if (id != null && !JAST.compilationUnit().errorHasOccurred()) {
             id.setClassRep(partial.toClass());
         }
     }
@@ -227,7 +235,7 @@ class JClassDeclaration extends JAST implements JTypeDecl {
             for (Method method : thisType.abstractMethods()) {
                 methods += "\n" + method;
             }
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Class must be declared abstract since it defines "
                             + "the following abstract methods: %s", methods);
 
@@ -245,8 +253,8 @@ class JClassDeclaration extends JAST implements JTypeDecl {
 
     public void codegen(CLEmitter output) {
         // The class header
-        String qualifiedName = JAST.compilationUnit.packageName() == "" ? name
-                : JAST.compilationUnit.packageName() + "/" + name;
+        String qualifiedName = JAST.compilationUnit().packageName() == "" ? name
+                : JAST.compilationUnit().packageName() + "/" + name;
         output.addClass(mods, qualifiedName, superType.jvmName(), null, false);
 
         // The implicit empty constructor?
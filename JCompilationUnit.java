@@ -14,8 +14,10 @@ import java.util.ArrayList;
  * generation. It also maintains a {@link CompilationUnitContext} 
  * (built in pre-analysis) for declaring both imported and declared types.
  * <p>
- * The AST is produced by the {@link Parser}. Once the AST has been built, three
- * successive methods are invoked:
+ * The AST is produced by the {@link Parser}. Once the AST has been built, 
+ * method {@code declareTypes} is invoked for declaring its types in a 
+ * {@link GlobalContext} shared by all the units compiled together; once that's
+ * been done for every unit, three successive methods are invoked:
  * <ol>
  *   <li>Method {@code preAnalyze} is invoked for making a first pass at type 
  *       analysis, recursively reaching down to the member headers for declaring
@@ -65,7 +67,7 @@ class JCompilationUnit extends JAST {
     /** For imports and type declarations. */
     private CompilationUnitContext context;
 
-    /** Whether a semantic error has been found. */
+    /** Whether a semantic (or code generation) error has been found. */
     private boolean isInError;
 
     /**
@@ -93,7 +95,17 @@ class JCompilationUnit extends JAST {
         this.imports = imports;
         this.typeDeclarations = typeDeclarations;
         clFiles = new ArrayList<CLFile>();
-        compilationUnit = this;
+        setCompilationUnit(this);
+    }
+
+    /**
+     * Returns the name of the source file.
+     * 
+     * @return the name of the source file.
+     */
+
+    public String fileName() {
+        return fileName;
     }
 
     /**
@@ -118,6 +130,16 @@ class JCompilationUnit extends JAST {
         return isInError;
     }
 
+    /**
+     * Records that an error has occurred in this compilation unit, outside
+     * of its analysis proper: a syntax error in a body parsed lazily, say
+     * (see {@link JLazyBlock}). The error has already been reported.
+     */
+
+    public void markInError() {
+        isInError = true;
+    }
+
     /**
      * Reports a semantic error.
      * 
@@ -132,46 +154,150 @@ class JCompilationUnit extends JAST {
     public void reportSemanticError(int line, String message,
             Object... arguments) {
         isInError = true;
-        System.err.printf("%s:%d: ", fileName, line);
-        System.err.printf(message, arguments);
-        System.err.println();
+        Session.current().report(new Diagnostic(fileName, line, String
+                .format(message, arguments)));
     }
 
     /**
-     * Constructs a context for the compilation unit, initializing it with
-     * imported types. Then pre-analyze the unit's type declarations, adding
-     * their types to the context.
+     * Constructs a context for the compilation unit, surrounded by the 
+     * specified global context, and declares the unit's locally declared 
+     * type(s) in both. This must be done for all the units compiled together 
+     * before any of them is pre-analyzed, so that a type declared in one unit 
+     * can be referred to from another.
+     * 
+     * @param globalContext
+     *            the global context shared by all the units compiled together.
      */
 
-    public void preAnalyze() {
-        context = new CompilationUnitContext();
+    public void declareTypes(GlobalContext globalContext) {
+        setCompilationUnit(this);
+        context = new CompilationUnitContext(globalContext);
 
         // Declare the two implicit types java.lang.Object and
         // java.lang.String
         context.addType(0, Type.OBJECT);
         context.addType(0, Type.STRING);
 
-        // Declare any imported types
+        // Declare the locally declared type(s)
+        for (JAST typeDeclaration : typeDeclarations) {
+            ((JTypeDecl) typeDeclaration).declareThisType(context);
+            globalContext.addType(typeDeclaration.line(),
+                    ((JTypeDecl) typeDeclaration).thisType());
+        }
+    }
+
+    /**
+     * Returns the types declared in this compilation unit. Meaningful only 
+     * after {@code declareTypes}.
+     * 
+     * @return the declared types.
+     */
+
+    public ArrayList<Type> declaredTypes() {
+        ArrayList<Type> declaredTypes = new ArrayList<Type>();
+        for (JAST typeDeclaration : typeDeclarations) {
+            declaredTypes.add(((JTypeDecl) typeDeclaration).thisType());
+        }
+        return declaredTypes;
+    }
+
+    /**
+     * Returns the fully qualified names that the (not yet resolved) 
+     * superclasses of the types declared in this compilation unit might 
+     * denote: each name as written, qualified by this unit's package, and 
+     * qualified as any import having the same simple name.
+     * 
+     * @return the possible names of the superclasses.
+     */
+
+    public ArrayList<String> superClassNames() {
+        ArrayList<String> names = new ArrayList<String>();
+        for (JAST typeDeclaration : typeDeclarations) {
+            Type superType = ((JTypeDecl) typeDeclaration).superType();
+            if (superType == null) {
+                continue;
+            }
+            String name = superType.toString();
+            names.add(name);
+            if (packageName != null) {
+                names.add(packageName.toString() + "." + name);
+            }
+            for (TypeName imported : imports) {
+                if (imported.simpleName().equals(name)) {
+                    names.add(imported.toString());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Returns the fully qualified names of the types, declared in the global
+     * context, that this compilation unit can refer to by name: the types 
+     * declared in its package, the types it imports and its superclasses. 
+     * Meaningful only after {@code preAnalyze}.
+     * 
+     * @return the names of the types this unit depends on.
+     */
+
+    public ArrayList<String> dependencies() {
+        GlobalContext globalContext = context.globalContext();
+        ArrayList<String> names = new ArrayList<String>();
+        for (Type type : globalContext.typesInPackage(packageName().replace(
+                "/", "."))) {
+            names.add(type.toString());
+        }
         for (TypeName imported : imports) {
-            try {
-                Class<?> classRep = Class.forName(imported.toString());
-                context.addType(imported.line(), Type.typeFor(classRep));
-            } catch (Exception e) {
-                JAST.compilationUnit.reportSemanticError(imported.line(),
-                        "Unable to find %s", imported.toString());
+            if (globalContext.lookupType(imported.toString()) != null) {
+                names.add(imported.toString());
+            }
+        }
+        for (String name : superClassNames()) {
+            if (globalContext.lookupType(name) != null
+                    && !names.contains(name)) {
+                names.add(name);
             }
         }
+        return names;
+    }
 
-        // Declare the locally declared type(s)
-        CLEmitter.initializeByteClassLoader();
-        for (JAST typeDeclaration : typeDeclarations) {
-            ((JTypeDecl) typeDeclaration).declareThisType(context);
+    /**
+     * Initializes the context for the compilation unit with the types declared 
+     * in the same package by other units, and with imported types. Then 
+     * pre-analyze the unit's type declarations.
+     */
+
+    public void preAnalyze() {
+        setCompilationUnit(this);
+        GlobalContext globalContext = context.globalContext();
+
+        // Declare the types declared in this package by the other
+        // units
+        for (Type type : globalContext.typesInPackage(packageName().replace(
+                "/", "."))) {
+            if (context.lookupType(type.simpleName()) == null) {
+                context.addType(0, type);
+            }
+        }
+
+        // Declare any imported types, looking first among the types
+        // declared by the units
+        for (TypeName imported : imports) {
+            Type type = globalContext.lookupType(imported.toString());
+            if (type == null) {
+                type = globalContext.loadType(imported.toString());
+            }
+            if (type != null) {
+                context.addType(imported.line(), type);
+            } else {
+                JAST.compilationUnit().reportSemanticError(imported.line(),
+                        "Unable to find %s", imported.toString());
+            }
         }
 
         // Pre-analyze the locally declared type(s). Generate
         // (partial) Class instances, reflecting only the member
         // interface type information
-        CLEmitter.initializeByteClassLoader();
         for (JAST typeDeclaration : typeDeclarations) {
             ((JTypeDecl) typeDeclaration).preAnalyze(context);
         }
@@ -186,6 +312,7 @@ class JCompilationUnit extends JAST {
      */
 
     public JAST analyze(Context context) {
+        setCompilationUnit(this);
         for (JAST typeDeclaration : typeDeclarations) {
             typeDeclaration.analyze(this.context);
         }
@@ -202,9 +329,11 @@ class JCompilationUnit extends JAST {
      */
 
     public void codegen(CLEmitter output) {
+        setCompilationUnit(this);
         for (JAST typeDeclaration : typeDeclarations) {
             typeDeclaration.codegen(output);
             output.write();
+            isInError |= output.errorHasOccurred();
             clFiles.add(output.clFile());
         }
     }
@@ -58,10 +58,10 @@ class JConstructorDeclaration extends JMethodDeclaration implements JMember {
     public void preAnalyze(Context context, CLEmitter partial) {
         super.preAnalyze(context, partial);
         if (isStatic) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Constructor cannot be declared static");
         } else if (isAbstract) {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "Constructor cannot be declared abstract");
         }
         if (body.statements().size() > 0
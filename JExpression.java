@@ -81,7 +81,8 @@ abstract class JExpression extends JStatement {
         // We should never reach here, i.e., all boolean
         // (including
         // identifier) expressions must override this method.
-        System.err.println("Error in code generation");
+        Session.current().report(new Diagnostic(null, 0,
+                "Error in code generation"));
     }
 
 }
@@ -0,0 +1,132 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.ArrayList;
+
+/**
+ * The AST node for a method or constructor body whose parsing has been put
+ * off (in skeleton parsing, with {@code -lazy}): the parser just records
+ * where in the tokens of the source the body starts, and skips to its end.
+ * The body's statements are parsed only when they are first needed, which
+ * for a method is when it is analyzed, and for a constructor when it is
+ * pre-analyzed (to find any explicit constructor invocation). A syntax error
+ * in the body is reported then, and puts the compilation unit in error; the
+ * body is then taken to be empty, and is not analyzed (nor is the method
+ * held to its return type). So with {@code -pa}, which stops before
+ * analysis, syntax errors in method bodies are not found.
+ */
+
+class JLazyBlock extends JBlock {
+
+    /** The scanner the body was skipped by; {@code null} once parsed. */
+    private LookaheadScanner scanner;
+
+    /** Position of the body's LCURLY in the scanner's tokens. */
+    private int start;
+
+    /** Whether the body has a syntax error. */
+    private boolean erroneous;
+
+    /**
+     * Constructs an AST node for a body that is yet to be parsed.
+     * 
+     * @param line
+     *            line in which the body occurs in the source file.
+     * @param scanner
+     *            the scanner the body was skipped by.
+     * @param start
+     *            position of the body's LCURLY in the scanner's tokens.
+     */
+
+    public JLazyBlock(int line, LookaheadScanner scanner, int start) {
+        super(line, new ArrayList<JStatement>());
+        this.scanner = scanner;
+        this.start = start;
+    }
+
+    /**
+     * Returns the list of statements comprising the body, parsing them if
+     * they have not been parsed yet.
+     * 
+     * @return list of statements.
+     */
+
+    public ArrayList<JStatement> statements() {
+        if (parse(true)) {
+            JAST.compilationUnit().markInError();
+        }
+        return super.statements();
+    }
+
+    /**
+     * Parses the body, if it has not been parsed yet. A body having a syntax
+     * error is left empty, rather than holding the statements recovered from
+     * the error, so nothing is made of them in analysis.
+     * 
+     * @param reportErrors
+     *            whether syntax errors are reported (or just noted).
+     * @return {@code true} if a syntax error was found, and {@code false}
+     *         otherwise.
+     */
+
+    public boolean parse(boolean reportErrors) {
+        if (scanner == null) {
+            return false;
+        }
+        Parser parser = new Parser(scanner.at(start), false, reportErrors);
+        ArrayList<JStatement> statements = parser.lazyBody().statements();
+        scanner = null;
+        if (parser.errorHasOccurred()) {
+            erroneous = true;
+            return true;
+        }
+        super.statements().addAll(statements);
+        return false;
+    }
+
+    /**
+     * Parses the body, if it has not been parsed yet, and analyzes it. A body
+     * having a syntax error is not analyzed, and is taken to return, so that
+     * the error is the only one reported for it.
+     * 
+     * @param context
+     *            context in which names are resolved.
+     * @return the analyzed (and possibly rewritten) AST subtree.
+     */
+
+    public JBlock analyze(Context context) {
+        statements();
+        if (erroneous) {
+            context.methodContext().confirmMethodHasReturn();
+            return this;
+        }
+        return super.analyze(context);
+    }
+
+    /**
+     * Generates code for the body, which has been parsed in analysis.
+     * 
+     * @param output
+     *            the code emitter (basically an abstraction for producing the
+     *            .class file).
+     */
+
+    public void codegen(CLEmitter output) {
+        statements();
+        super.codegen(output);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    public void writeToStdOut(PrettyPrinter p) {
+        if (scanner == null) {
+            super.writeToStdOut(p);
+        } else {
+            p.printf("<JLazyBlock line=\"%d\"/>\n", line());
+        }
+    }
+
+}
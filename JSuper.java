@@ -37,7 +37,7 @@ class JSuper extends JExpression {
         if (type.isReference() && type.superClass() != null) {
             type = type.superClass();
         } else {
-            JAST.compilationUnit.reportSemanticError(line(),
+            JAST.compilationUnit().reportSemanticError(line(),
                     "No super class for type " + type.toString());
         }
         return this;
@@ -211,7 +211,7 @@ class JPostDecrementOp extends JUnaryExpression {
 
     public JExpression analyze(Context context) {
         if (!(arg instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Operand to expr-- must have an LValue.");
             type = Type.ANY;
         } else {
@@ -294,7 +294,7 @@ class JPreIncrementOp extends JUnaryExpression {
 
     public JExpression analyze(Context context) {
         if (!(arg instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Operand to ++expr must have an LValue.");
             type = Type.ANY;
         } else {
@@ -378,7 +378,7 @@ class JPostIncrementOp extends JUnaryExpression {
 
     public JExpression analyze(Context context) {
          if (!(arg instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Operand to expr++ must have an LValue.");
             type = Type.ANY;
         } else {
@@ -448,7 +448,7 @@ class JPreDecrementOp extends JUnaryExpression {
 
     public JExpression analyze(Context context) {
         if (!(arg instanceof JLhs)) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Operand to --expr must have an LValue.");
             type = Type.ANY;
         } else {
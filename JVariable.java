@@ -71,7 +71,7 @@ class JVariable extends JExpression implements JLhs {
             Field field = definingType.fieldFor(name);
             if (field == null) {
                 type = Type.ANY;
-                JAST.compilationUnit.reportSemanticError(line,
+                JAST.compilationUnit().reportSemanticError(line,
                         "Cannot find name: " + name);
             } else {
                 // Rewrite a variable denoting a field as an
@@ -88,7 +88,7 @@ class JVariable extends JExpression implements JLhs {
         } else {
             if (!analyzeLhs && iDefn instanceof LocalVariableDefn
                     && !((LocalVariableDefn) iDefn).isInitialized()) {
-                JAST.compilationUnit.reportSemanticError(line, "Variable "
+                JAST.compilationUnit().reportSemanticError(line, "Variable "
                         + name + " might not have been initialized");
             }
             type = iDefn.type();
@@ -111,7 +111,7 @@ class JVariable extends JExpression implements JLhs {
             // Could (now) be a JFieldSelection, but if it's
             // (still) a JVariable
             if (iDefn != null && !(iDefn instanceof LocalVariableDefn)) {
-                JAST.compilationUnit.reportSemanticError(line(), name
+                JAST.compilationUnit().reportSemanticError(line(), name
                         + " is a bad lhs to a  =");
             }
         }
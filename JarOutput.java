@@ -0,0 +1,92 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * A JAR file that the classes of a compilation are written to (with
+ * {@code -jar <file>}), instead of to a .class file each. Each class is
+ * streamed into the (compressed) JAR as soon as it has been generated, so the
+ * JAR is written once, sequentially, with no directories or class files
+ * created. Classes are written one at a time, whichever thread generates
+ * them.
+ */
+
+class JarOutput {
+
+    /** Name of the JAR file. */
+    private String fileName;
+
+    /** The JAR being written. */
+    private JarOutputStream jar;
+
+    /** Buffers the writes of a class into the current entry. */
+    private CLOutputStream out;
+
+    /**
+     * Creates the specified JAR file, and writes its manifest.
+     *
+     * @param fileName
+     *            name of the JAR file.
+     * @exception IOException
+     *                if the file cannot be created or written.
+     */
+
+    public JarOutput(String fileName) throws IOException {
+        this.fileName = fileName;
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().putValue("Manifest-Version", "1.0");
+        manifest.getMainAttributes().putValue("Created-By", "j--");
+        jar = new JarOutputStream(new BufferedOutputStream(
+                new FileOutputStream(fileName)), manifest);
+        out = new CLOutputStream(new BufferedOutputStream(jar));
+    }
+
+    /**
+     * Returns the name of the JAR file.
+     *
+     * @return the name of the JAR file.
+     */
+
+    public String fileName() {
+        return fileName;
+    }
+
+    /**
+     * Writes the specified class to the JAR, as the specified entry.
+     *
+     * @param entryName
+     *            name of the entry (the internal name of the class, followed
+     *            by .class).
+     * @param clFile
+     *            the class.
+     * @exception IOException
+     *                if the entry cannot be written.
+     */
+
+    public synchronized void write(String entryName, CLFile clFile)
+            throws IOException {
+        jar.putNextEntry(new ZipEntry(entryName));
+        clFile.write(out);
+        out.flush();
+        jar.closeEntry();
+    }
+
+    /**
+     * Finishes writing the JAR, and closes the file.
+     *
+     * @exception IOException
+     *                if the JAR cannot be written.
+     */
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+}
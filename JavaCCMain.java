@@ -3,7 +3,9 @@
 package jminusminus;
 
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Driver class for j-- compiler using JavaCC front-end. This is the main entry
@@ -11,12 +13,19 @@ import java.io.FileNotFoundException;
  * <ol>
  *   <li>It reads arguments that affects its behavior.</li>
  * 
- *   <li>It builds a scanner.</li>
+ *   <li>For each source file, it builds a scanner, reading the file through a
+ *       {@link SimpleCharStream} (or, with {@code -buffer}, a
+ *       {@link CharBufferStream}).</li>
  * 
  *   <li>It builds a parser (using the scanner) and parses the input for producing
  *       an abstact syntax tree (AST).</li>
  * 
- *   <li>It sends the {@code preAnalyze} message to that AST, which recursively 
+ *   <li>It sends the {@code declareTypes} message to each AST, declaring the 
+ *       types it defines in a symbol table shared by all the source files 
+ *       (a {@link GlobalContext}), so that types declared in one file can be 
+ *       referred to from the others.</li>
+ * 
+ *   <li>It sends the {@code preAnalyze} message to each AST, which recursively 
  *       descends the tree so far as the member headers for declaring types and 
  *       members in the symbol table (represented as a string of contexts).</li>
  * 
@@ -46,18 +55,50 @@ public class JavaCCMain {
      */
 
     public static void main(String args[]) {
+        Session session = new Session();
+        session.makeCurrent();
+        errorHasOccurred = false;
+        try {
+            args = Main.expandArgFiles(args);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            errorHasOccurred = true;
+            return;
+        }
+        boolean statsOption = Arrays.asList(args).contains("-stats");
+        if (statsOption || Stats.eventsEnabled()) {
+            session.stats(new Stats());
+        }
+        try {
+            compile(args, session);
+        } finally {
+            Main.finishStats(session, statsOption);
+        }
+    }
+
+    /**
+     * Compiles as directed by the specified (expanded) command-line 
+     * arguments, in the specified session, which is the current one.
+     *
+     * @param args
+     *            the command-line arguments, with argument files expanded.
+     * @param session
+     *            the compilation session.
+     */
+
+    private static void compile(String[] args, Session session) {
         String caller = "java jminusminus.JavaCCMain";
-        String sourceFile = "";
+        ArrayList<String> sourceFiles = new ArrayList<String>();
         String debugOption = "";
         String outputDir = ".";
         boolean spimOutput = false;
         String registerAllocation = "";
-        errorHasOccurred = false;
+        boolean bufferOption = false;
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("javaccj--")) {
                 caller = "javaccj--";
             } else if (args[i].endsWith(".java")) {
-                sourceFile = args[i];
+                sourceFiles.add(args[i]);
             } else if (args[i].equals("-t") || args[i].equals("-p")
                     || args[i].equals("-pa") || args[i].equals("-a")) {
                 debugOption = args[i];
@@ -74,70 +115,97 @@ public class JavaCCMain {
                     return;
                 }
             } else if (args[i].endsWith("-r") && (i + 1) < args.length) {
-                NPhysicalRegister.MAX_COUNT = Math.min(18, Integer
-                        .parseInt(args[++i]));
-                NPhysicalRegister.MAX_COUNT = Math.max(1,
-                        NPhysicalRegister.MAX_COUNT);
+                session.maxRegisterCount(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-buffer")) {
+                bufferOption = true;
+            } else if (args[i].equals("-stats")) {
+                // Handled by main()
             } else {
                 printUsage(caller);
                 return;
             }
         }
-        if (sourceFile.equals("")) {
+        if (sourceFiles.isEmpty()) {
             printUsage(caller);
             return;
         }
 
-        JavaCCParserTokenManager javaCCScanner = null;
-        try {
-            javaCCScanner = new JavaCCParserTokenManager(new SimpleCharStream(
-                    new FileInputStream(sourceFile), 1, 1));
-        } catch (FileNotFoundException e) {
-            System.err.println("Error: file " + sourceFile + " not found.");
-        }
+        ArrayList<JCompilationUnit> asts = new ArrayList<JCompilationUnit>();
+        for (String sourceFile : sourceFiles) {
+            Stats.Measurement measurement = Stats.measureThread(session
+                    .stats(), "parse");
+            try {
+                JavaCCParserTokenManager javaCCScanner = null;
+                try {
+                    javaCCScanner = new JavaCCParserTokenManager(
+                            bufferOption ? CharBufferStream.open(sourceFile)
+                                    : new SimpleCharStream(new FileInputStream(
+                                            sourceFile), 1, 1));
+                } catch (IOException e) {
+                    System.err.println("Error: file " + sourceFile
+                            + " not found.");
+                    errorHasOccurred = true;
+                    return;
+                }
 
-        if (debugOption.equals("-t")) {
-            // Just tokenize input and print the tokens to STDOUT
-            Token token;
-            do {
-                token = javaCCScanner.getNextToken();
-                if (token.kind == JavaCCParserConstants.ERROR) {
-                    System.err.printf(
-                            "%s:%d: Unidentified input token: '%s'\n",
-                            sourceFile, token.beginLine, token.image);
-                    errorHasOccurred |= true;
-                } else {
-                    System.out.printf("%d\t : %s = %s\n", token.beginLine,
-                            JavaCCParserConstants.tokenImage[token.kind],
-                            token.image);
+                if (debugOption.equals("-t")) {
+                    // Just tokenize input and print the tokens to STDOUT
+                    Token token;
+                    do {
+                        token = javaCCScanner.getNextToken();
+                        if (token.kind == JavaCCParserConstants.ERROR) {
+                            System.err.printf(
+                                    "%s:%d: Unidentified input token: '%s'\n",
+                                    sourceFile, token.beginLine, token.image);
+                            errorHasOccurred |= true;
+                        } else {
+                            System.out.printf("%d\t : %s = %s\n",
+                                    token.beginLine,
+                                    JavaCCParserConstants.tokenImage[token
+                                            .kind], token.image);
+                        }
+                    } while (token.kind != JavaCCParserConstants.EOF);
+                    continue;
                 }
-            } while (token.kind != JavaCCParserConstants.EOF);
-            return;
-        }
 
-        // Parse input
-        JCompilationUnit ast = null;
-        JavaCCParser javaCCParser = new JavaCCParser(javaCCScanner);
-        javaCCParser.fileName(sourceFile);
-        try {
-            ast = javaCCParser.compilationUnit();
-            errorHasOccurred |= javaCCParser.errorHasOccurred();
-        } catch (ParseException e) {
-            System.err.println(e.getMessage());
+                // Parse input
+                JavaCCParser javaCCParser = new JavaCCParser(javaCCScanner);
+                javaCCParser.fileName(sourceFile);
+                try {
+                    asts.add(javaCCParser.compilationUnit());
+                    errorHasOccurred |= javaCCParser.errorHasOccurred();
+                } catch (ParseException e) {
+                    System.err.println(e.getMessage());
+                    errorHasOccurred = true;
+                }
+            } finally {
+                measurement.stop();
+            }
+        }
+        if (debugOption.equals("-t")) {
+            return;
         }
         if (debugOption.equals("-p")) {
-            ast.writeToStdOut(new PrettyPrinter());
+            writeToStdOut(asts);
             return;
         }
         if (errorHasOccurred) {
             return;
         }
 
+        // Declare the types of all the units in the (global) symbol
+        // table they share
+        session.declareTypes(asts);
+        errorHasOccurred |= Main.errorHasOccurredIn(asts);
+        if (errorHasOccurred) {
+            return;
+        }
+
         // Do pre-analysis
-        ast.preAnalyze();
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        session.preAnalyze(asts);
+        errorHasOccurred |= Main.errorHasOccurredIn(asts);
         if (debugOption.equals("-pa")) {
-            ast.writeToStdOut(new PrettyPrinter());
+            writeToStdOut(asts);
             return;
         }
         if (errorHasOccurred) {
@@ -145,10 +213,10 @@ public class JavaCCMain {
         }
 
         // Do analysis
-        ast.analyze(null);
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        session.analyze(asts);
+        errorHasOccurred |= Main.errorHasOccurredIn(asts);
         if (debugOption.equals("-a")) {
-            ast.writeToStdOut(new PrettyPrinter());
+            writeToStdOut(asts);
             return;
         }
         if (errorHasOccurred) {
@@ -156,10 +224,8 @@ public class JavaCCMain {
         }
 
         // Generate JVM code
-        CLEmitter clEmitter = new CLEmitter(!spimOutput);
-        clEmitter.destinationDir(outputDir);
-        ast.codegen(clEmitter);
-        errorHasOccurred |= clEmitter.errorHasOccurred();
+        session.codegen(asts, !spimOutput, outputDir);
+        errorHasOccurred |= Main.errorHasOccurredIn(asts);
         if (errorHasOccurred) {
             return;
         }
@@ -168,11 +234,16 @@ public class JavaCCMain {
         // JVM instructions to SPIM using the specified register
         // allocation scheme.
         if (spimOutput) {
-            NEmitter nEmitter = new NEmitter(sourceFile, ast.clFiles(),
-                    registerAllocation);
-            nEmitter.destinationDir(outputDir);
-            nEmitter.write();
-            errorHasOccurred |= nEmitter.errorHasOccurred();
+            Stats.Measurement measurement = Stats.measureThread(session
+                    .stats(), "spim");
+            for (JCompilationUnit ast : asts) {
+                NEmitter nEmitter = new NEmitter(ast.fileName(), ast
+                        .clFiles(), registerAllocation);
+                nEmitter.destinationDir(outputDir);
+                nEmitter.write();
+                errorHasOccurred |= nEmitter.errorHasOccurred();
+            }
+            measurement.stop();
         }
     }
 
@@ -186,6 +257,19 @@ public class JavaCCMain {
         return errorHasOccurred;
     }
 
+    /**
+     * Writes the ASTs of the specified compilation units to STDOUT.
+     * 
+     * @param asts
+     *            the compilation units.
+     */
+
+    private static void writeToStdOut(ArrayList<JCompilationUnit> asts) {
+        for (JCompilationUnit ast : asts) {
+            ast.writeToStdOut(new PrettyPrinter());
+        }
+    }
+
     /**
      * Prints command usage to STDOUT.
      * 
@@ -196,7 +280,7 @@ public class JavaCCMain {
     private static void printUsage(String caller) {
         String usage = "Usage: "
                 + caller
-                + " <options> <source file>\n"
+                + " <options> <source files>\n"
                 + "where possible options include:\n"
                 + "  -t Only tokenize input and print tokens to STDOUT\n"
                 + "  -p Only parse input and print AST to STDOUT\n"
@@ -206,7 +290,12 @@ public class JavaCCMain {
                 + "and print AST to STDOUT\n"
                 + "  -s <naive|linear|graph> Generate SPIM code\n"
                 + "  -r <num> Max. physical registers (1-18) available for allocation; default = 8\n"
-                + "  -d <dir> Specify where to place output files; default = .";
+                + "  -d <dir> Specify where to place output files; default = .\n"
+                + "  -buffer Read each source file whole, into a buffer "
+                + "(faster for long\n"
+                + "     comments and strings)\n"
+                + "  -stats Report time, allocation and counts for each phase\n"
+                + "  @<file> Read options and source files from file";
         System.out.println(usage);
     }
 
@@ -41,9 +41,8 @@ class JavaCCParser implements JavaCCParserConstants {
 
     private void reportParserError( String message, Object... args ) {
         errorHasOccurred = true;
-        System.err.printf( "%s:%d: ", fileName, token.beginLine );
-        System.err.printf( message, args );
-        System.err.println();
+        Session.current().report( new Diagnostic( fileName, token.beginLine,
+            String.format( message, args ) ) );
     }
 
     /**
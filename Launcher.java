@@ -0,0 +1,148 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Runs a compiled program in the JVM running the compiler (with
+ * {@code -run}), rather than writing its class files for a second JVM to
+ * run. The classes, generated in memory, are defined by a
+ * {@link MemoryClassLoader} of their own, and the {@code main} method of the
+ * first type (in the order of the source files) that has one is invoked.
+ * <p>
+ * The program writes to the process's own STDOUT and STDERR, and may exit
+ * the process; so it is not run for a session hosted by a server or a batch
+ * (see {@link Session#isHosted()}).
+ */
+
+class Launcher {
+
+    /**
+     * Runs the program made up of the specified classes.
+     *
+     * @param asts
+     *            the (compiled) compilation units, in the order of the source
+     *            files.
+     * @param classes
+     *            maps the names of the generated classes to their bytes.
+     * @param args
+     *            the arguments passed to the program's {@code main}.
+     * @param session
+     *            the compilation session.
+     * @return {@code true} if the program cannot be run or terminates with
+     *         an exception, and {@code false} otherwise.
+     */
+
+    public static boolean run(ArrayList<JCompilationUnit> asts,
+            Map<String, byte[]> classes, String[] args, Session session) {
+        MemoryClassLoader loader = new MemoryClassLoader(classes);
+        Method main = null;
+        try {
+            for (JCompilationUnit ast : asts) {
+                for (Type type : ast.declaredTypes()) {
+                    main = mainMethod(loader.loadClass(type.toString()));
+                    if (main != null) {
+                        break;
+                    }
+                }
+                if (main != null) {
+                    break;
+                }
+            }
+        } catch (ClassNotFoundException | LinkageError e) {
+            session.err().println("Error: cannot load class: " + e);
+            return true;
+        }
+        if (main == null) {
+            session.err().println("Error: no type has a method "
+                    + "public static void main(String[])");
+            return true;
+        }
+
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            main.invoke(null, (Object) args);
+            return false;
+        } catch (InvocationTargetException e) {
+            session.err().print("Exception in thread \"" + thread.getName()
+                    + "\" ");
+            e.getCause().printStackTrace(session.err());
+            return true;
+        } catch (IllegalAccessException e) {
+            session.err().println("Error: cannot invoke " + main);
+            return true;
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+    }
+
+    /**
+     * Returns the {@code public static void main(String[])} method of the
+     * specified class.
+     *
+     * @param cls
+     *            the class.
+     * @return the method; {@code null} if the class has none.
+     */
+
+    private static Method mainMethod(Class<?> cls) {
+        try {
+            Method main = cls.getMethod("main", String[].class);
+            int modifiers = main.getModifiers();
+            if (Modifier.isPublic(cls.getModifiers())
+                    && Modifier.isStatic(modifiers)
+                    && main.getReturnType() == void.class) {
+                return main;
+            }
+        } catch (NoSuchMethodException e) {
+            // No main here
+        }
+        return null;
+    }
+
+}
+
+/**
+ * A class loader that defines classes from bytes held in memory, by name,
+ * loading every other class from its parent (the class loader of the
+ * compiler).
+ */
+
+class MemoryClassLoader extends ClassLoader {
+
+    /** Maps the names of the classes to their bytes. */
+    private Map<String, byte[]> classes;
+
+    /**
+     * Constructs a class loader for the specified classes.
+     *
+     * @param classes
+     *            maps the (fully qualified) names of the classes to their
+     *            bytes.
+     */
+
+    public MemoryClassLoader(Map<String, byte[]> classes) {
+        super(MemoryClassLoader.class.getClassLoader());
+        this.classes = classes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = classes.get(name);
+        if (bytes == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+}
@@ -3,13 +3,19 @@
 package jminusminus;
 
 import java.io.FileNotFoundException;
-import java.util.Stack;
-import java.util.Vector;
+import java.io.Reader;
+import java.util.Arrays;
 
 /**
  * A lexical analyzer for j-- that interfaces with the hand-written parser
  * ({@link Parser}). It provides a backtracking mechanism, and makes use of the
  * underlying hand-written {@link Scanner}.
+ * <p>
+ * The whole of the input is scanned, in one pass, into a {@link TokenArray}
+ * before parsing begins; the parser then walks the array by index, asking
+ * for the kind, line and image of the current token. Recording a position
+ * just pushes the index, and returning to it pops it back, so looking ahead
+ * costs nothing beyond index arithmetic.
  */
 
 class LookaheadScanner {
@@ -17,24 +23,24 @@ class LookaheadScanner {
     /** The underlying hand-written scanner. */
     private Scanner scanner;
 
-    /** Backtracking queue. */
-    private Vector<TokenInfo> backtrackingQueue;
+    /** The tokens of the input, the last being EOF. */
+    private TokenArray tokens;
 
-    /** Token queue. */
-    private Vector<TokenInfo> nextQueue;
+    /** Index of the current token; -1 before the first. */
+    private int index;
 
-    /** Stack of token queues for nested lookahead. */
-    private Stack<Vector<TokenInfo>> queueStack;
+    /**
+     * Stack of the recorded positions (indices of tokens), for nested
+     * lookahead.
+     */
+    private int[] marks;
+
+    /** Number of recorded positions. */
+    private int depth;
 
     /** Whether we are looking ahead. */
     public boolean isLookingAhead;
 
-    /** Previous token. */
-    private TokenInfo previousToken;
-
-    /** Current token. */
-    private TokenInfo token;
-
     /**
      * Constructs a LookaheadScanner from a file name.
      * 
@@ -45,60 +51,149 @@ class LookaheadScanner {
      */
 
     public LookaheadScanner(String fileName) throws FileNotFoundException {
-        scanner = new Scanner(fileName);
-        backtrackingQueue = new Vector<TokenInfo>();
-        nextQueue = new Vector<TokenInfo>();
-        queueStack = new Stack<Vector<TokenInfo>>();
+        this(new Scanner(fileName));
+    }
+
+    /**
+     * Constructs a LookaheadScanner for the source read from the specified
+     * reader.
+     * 
+     * @param fileName
+     *            the name of the source, for reporting errors.
+     * @param reader
+     *            reader from which the source is read.
+     */
+
+    public LookaheadScanner(String fileName, Reader reader) {
+        this(new Scanner(fileName, reader));
+    }
+
+    /**
+     * Constructs a LookaheadScanner over the tokens of another, which will
+     * scan to the token at the specified position first.
+     * 
+     * @param scanner
+     *            the underlying scanner.
+     * @param tokens
+     *            the tokens of the input.
+     * @param position
+     *            position of the first token to be scanned.
+     */
+
+    private LookaheadScanner(Scanner scanner, TokenArray tokens,
+            int position) {
+        this.scanner = scanner;
+        this.tokens = tokens;
+        index = position - 1;
+        marks = new int[16];
+        depth = 0;
         isLookingAhead = false;
     }
 
     /**
-     * Scans to the next token in the input.
+     * Constructs a LookaheadScanner on top of the specified scanner.
+     * 
+     * @param scanner
+     *            the underlying scanner.
+     */
+
+    private LookaheadScanner(Scanner scanner) {
+        this.scanner = scanner;
+        Stats.Measurement measurement = Stats.measureThread(Session.current()
+                .stats(), "parse/scan");
+        tokens = scanner.scanAll();
+        measurement.stop();
+        index = -1;
+        marks = new int[16];
+        depth = 0;
+        isLookingAhead = false;
+    }
+
+    /**
+     * Scans to the next token in the input; at the end of the input, the
+     * current token stays EOF.
      */
 
     public void next() {
-        previousToken = token;
-        if (backtrackingQueue.size() == 0) {
-            token = scanner.getNextToken();
-        } else {
-            token = backtrackingQueue.remove(0);
-        }
-        if (isLookingAhead) {
-            nextQueue.add(token);
+        if (index + 1 < tokens.size()) {
+            index++;
         }
     }
 
     /**
      * Records the current position in the input, so that we can start looking
-     * ahead in the input (and later return to this position). We'll queue up
-     * the current and subsequent tokens until {@code returnToPosition} is 
-     * invoked. These recordPosition's can be nested.
+     * ahead in the input (and later return to this position). These 
+     * recordPosition's can be nested.
      */
 
     public void recordPosition() {
+        if (depth == marks.length) {
+            marks = Arrays.copyOf(marks, depth * 2);
+        }
+        marks[depth++] = index;
         isLookingAhead = true;
-        queueStack.push(nextQueue);
-        nextQueue = new Vector<TokenInfo>();
-        nextQueue.add(previousToken);
-        nextQueue.add(token);
     }
 
     /**
      * Returns to the previously recorded position in the input stream of tokens.
-     * If this is a nested lookahead, then return to the previous token queue.
      */
 
     public void returnToPosition() {
-        while (backtrackingQueue.size() > 0) {
-            nextQueue.add(backtrackingQueue.remove(0));
-        }
-        backtrackingQueue = nextQueue;
-        nextQueue = queueStack.pop();
-        isLookingAhead = !(queueStack.empty());
+        index = marks[--depth];
+        isLookingAhead = depth > 0;
+    }
+
+    /**
+     * Returns the position of the current token in the input: the number of
+     * tokens before it.
+     * 
+     * @return the position of the current token.
+     */
 
-        // Restore previous and current tokens
-        previousToken = backtrackingQueue.remove(0);
-        token = backtrackingQueue.remove(0);
+    public int position() {
+        return index;
+    }
+
+    /**
+     * Returns the kind of the current token.
+     * 
+     * @return the current token's kind.
+     */
+
+    public TokenKind kind() {
+        return tokens.kind(index);
+    }
+
+    /**
+     * Returns the line of the current token.
+     * 
+     * @return the current token's line.
+     */
+
+    public int line() {
+        return tokens.line(index);
+    }
+
+    /**
+     * Returns the image of the current token.
+     * 
+     * @return the current token's image.
+     */
+
+    public String image() {
+        return tokens.image(index);
+    }
+
+    /**
+     * Returns the image of the previously scanned token. We use this in the
+     * parser to get at a token's semantic info (for example an identifier's
+     * name), after we've scanned it.
+     * 
+     * @return the previous token's image.
+     */
+
+    public String previousImage() {
+        return tokens.image(index - 1);
     }
 
     /**
@@ -108,19 +203,41 @@ class LookaheadScanner {
      */
 
     public TokenInfo token() {
-        return token;
+        return index < 0 ? null : tokens.token(index);
     }
 
     /**
-     * Returns the previously scanned token. We use this in the parser to get 
-     * at a token's semantic info (for example an identifier's name), after 
-     * we've scanned it.
+     * Returns the previously scanned token.
      * 
      * @return the previous token.
      */
 
     public TokenInfo previousToken() {
-        return previousToken;
+        return index < 1 ? null : tokens.token(index - 1);
+    }
+
+    /**
+     * Returns a new LookaheadScanner over the same tokens, which will scan to
+     * the token at the specified position first; for parsing a part of the
+     * input (a method body, say) that was skipped.
+     * 
+     * @param position
+     *            position of the first token to be scanned.
+     * @return the scanner.
+     */
+
+    public LookaheadScanner at(int position) {
+        return new LookaheadScanner(scanner, tokens, position);
+    }
+
+    /**
+     * Returns all the tokens of the input.
+     * 
+     * @return the tokens.
+     */
+
+    public TokenArray tokens() {
+        return tokens;
     }
 
     /**
@@ -2,10 +2,14 @@
 
 package jminusminus;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-
-import static jminusminus.TokenKind.EOF;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Driver class for j-- compiler using hand-written front-end. This is the main
@@ -13,12 +17,17 @@ import static jminusminus.TokenKind.EOF;
  * <ol>
  *   <li>It reads arguments that affects its behavior.</li>
  * 
- *   <li>It builds a scanner.</li>
+ *   <li>For each source file, it builds a scanner.</li>
  * 
  *   <li>It builds a parser (using the scanner) and parses the input for producing
  *       an abstact syntax tree (AST).</li>
  * 
- *   <li>It sends the {@code preAnalyze} message to that AST, which recursively 
+ *   <li>It sends the {@code declareTypes} message to each AST, declaring the 
+ *       types it defines in a symbol table shared by all the source files 
+ *       (a {@link GlobalContext}), so that types declared in one file can be 
+ *       referred to from the others.</li>
+ * 
+ *   <li>It sends the {@code preAnalyze} message to each AST, which recursively 
  *       descends the tree so far as the member headers for declaring types and 
  *       members in the symbol table (represented as a string of contexts).</li>
  * 
@@ -32,6 +41,9 @@ import static jminusminus.TokenKind.EOF;
  *       code. Again, {@code codegen} recursively descends the tree, down to its 
  *       leaves, generating JVM code for producing a .class or .s (SPIM) file 
  *       for each defined type (class).</li>
+ * 
+ *   <li>With {@code -run}, the classes are instead kept in memory, loaded 
+ *       into the compiler's JVM, and run (see {@link Launcher}).</li>
  * </ol>
  */
 
@@ -48,18 +60,91 @@ public class Main {
      */
 
     public static void main(String args[]) {
+        // The arguments after -- are the program's (see -run), not options
+        for (int i = 0; i < args.length && !args[i].equals("--"); i++) {
+            if (args[i].equals("-server")) {
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    CompileServer.serve(Integer.parseInt(args[i + 1]));
+                } else {
+                    CompileServer.serve(System.in, System.out);
+                }
+                return;
+            } else if (args[i].equals("-batch") && i + 1 < args.length) {
+                errorHasOccurred = BatchCompiler.run(args[i + 1], System.out);
+                return;
+            }
+        }
+        errorHasOccurred = compile(args, new Session());
+    }
+
+    /**
+     * Compiles as directed by the specified command-line arguments, in the
+     * specified session. Output and diagnostics are written to the session's
+     * streams. Statistics are gathered over the compilation if they are
+     * asked for (with {@code -stats}) or their JFR events are enabled.
+     *
+     * @param args
+     *            the command-line arguments.
+     * @param session
+     *            the compilation session.
+     * @return {@code true} if an error has occurred and {@code false} 
+     *         otherwise.
+     */
+
+    static boolean compile(String[] args, Session session) {
+        session.makeCurrent();
+        try {
+            args = expandArgFiles(args);
+        } catch (IOException e) {
+            session.err().println("Error: " + e.getMessage());
+            return true;
+        }
+        boolean statsOption = Arrays.asList(args).contains("-stats");
+        if (statsOption || Stats.eventsEnabled()) {
+            session.stats(new Stats());
+        }
+        try {
+            return compileExpanded(args, session);
+        } finally {
+            finishStats(session, statsOption);
+        }
+    }
+
+    /**
+     * Compiles as directed by the specified (expanded) command-line 
+     * arguments, in the specified session, which is the current one.
+     *
+     * @param args
+     *            the command-line arguments, with argument files expanded.
+     * @param session
+     *            the compilation session.
+     * @return {@code true} if an error has occurred and {@code false} 
+     *         otherwise.
+     */
+
+    private static boolean compileExpanded(String[] args, Session session) {
         String caller = "java jminusminus.Main";
-        String sourceFile = "";
+        ArrayList<String> sourceFiles = new ArrayList<String>();
         String debugOption = "";
         String outputDir = ".";
         boolean spimOutput = false;
         String registerAllocation = "";
-        errorHasOccurred = false;
+        String stateFile = null;
+        String cacheDir = null;
+        int cacheIndex = -1;
+        boolean runOption = false;
+        boolean lazyOption = false;
+        String jarFile = null;
+        String[] programArgs = new String[0];
+        boolean errorHasOccurred = false;
         for (int i = 0; i < args.length; i++) {
-            if (args[i].equals("j--")) {
+            if (args[i].equals("--")) {
+                programArgs = Arrays.copyOfRange(args, i + 1, args.length);
+                break;
+            } else if (args[i].equals("j--")) {
                 caller = "j--";
             } else if (args[i].endsWith(".java")) {
-                sourceFile = args[i];
+                sourceFiles.add(args[i]);
             } else if (args[i].equals("-t") || args[i].equals("-p")
                     || args[i].equals("-pa") || args[i].equals("-a")) {
                 debugOption = args[i];
@@ -73,97 +158,253 @@ public class Main {
                         && !registerAllocation.equals("graph")
                         || registerAllocation.equals("")) {
                     printUsage(caller);
-                    return;
+                    return false;
                 }
             } else if (args[i].endsWith("-r") && (i + 1) < args.length) {
-                NPhysicalRegister.MAX_COUNT = Math.min(18, Integer
-                        .parseInt(args[++i]));
-                NPhysicalRegister.MAX_COUNT = Math.max(1,
-                        NPhysicalRegister.MAX_COUNT);
+                session.maxRegisterCount(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-i") && (i + 1) < args.length) {
+                stateFile = args[++i];
+            } else if (args[i].equals("-c") && (i + 1) < args.length) {
+                cacheIndex = i;
+                cacheDir = args[++i];
+            } else if (args[i].equals("-jar") && (i + 1) < args.length) {
+                jarFile = args[++i];
+            } else if (args[i].equals("-run")) {
+                runOption = true;
+            } else if (args[i].equals("-lazy")) {
+                lazyOption = true;
+            } else if (args[i].equals("-stats")) {
+                // Handled by compile()
             } else {
                 printUsage(caller);
-                return;
+                return false;
             }
         }
-        if (sourceFile.equals("")) {
+        if (sourceFiles.isEmpty() || runOption && spimOutput
+                || jarFile != null && (spimOutput || runOption)) {
             printUsage(caller);
-            return;
+            return false;
         }
-
-        LookaheadScanner scanner = null;
-        try {
-            scanner = new LookaheadScanner(sourceFile);
-        } catch (FileNotFoundException e) {
-            System.err.println("Error: file " + sourceFile + " not found.");
-            return;
+        if (runOption && session.isHosted()) {
+            // The program would write to the process's STDOUT (a
+            // server's replies), and could exit the process
+            session.err().println("Error: -run is not supported by "
+                    + "-server or -batch");
+            return true;
         }
-
-        if (debugOption.equals("-t")) {
-            // Just tokenize input and print the tokens to STDOUT
-            TokenInfo token;
-            do {
-                scanner.next();
-                token = scanner.token();
-                System.out.printf("%d\t : %s = %s\n", token.line(), token
-                        .tokenRep(), token.image());
-            } while (token.kind() != EOF);
-            errorHasOccurred |= scanner.errorHasOccured();
-            return;
+        if (runOption) {
+            // Nothing is written; the classes are kept in memory, to
+            // be run once generated
+            session.keepClasses();
+            cacheDir = null;
+            stateFile = null;
         }
-
-        // Parse input
-        Parser parser = new Parser(scanner);
-        JCompilationUnit ast = parser.compilationUnit();
-        errorHasOccurred |= parser.errorHasOccurred();
-        if (debugOption.equals("-p")) {
-            ast.writeToStdOut(new PrettyPrinter());
-            return;
+        if (jarFile != null) {
+            // The output is the JAR, not class files in the output
+            // directory
+            cacheDir = null;
+            stateFile = null;
         }
-        if (errorHasOccurred) {
-            return;
+
+        // With an output cache, write the output for these sources
+        // and options (other than the cache itself) straight from
+        // the cache if it's there; SPIM compilations, which also
+        // write to STDOUT, are not cached
+        OutputCache outputCache = null;
+        String cacheKey = null;
+        if (cacheDir != null && debugOption.equals("") && !spimOutput) {
+            ArrayList<String> options = new ArrayList<String>(Arrays
+                    .asList(args));
+            options.subList(cacheIndex, cacheIndex + 2).clear();
+            outputCache = new OutputCache(cacheDir);
+            cacheKey = OutputCache.key(options, sourceFiles);
+            try {
+                if (cacheKey != null
+                        && outputCache.restore(cacheKey, outputDir)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                // Treat an unreadable entry as missing
+            }
         }
 
-        // Do pre-analysis
-        ast.preAnalyze();
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
-        if (debugOption.equals("-pa")) {
-            ast.writeToStdOut(new PrettyPrinter());
-            return;
+        // With a build state (for compiling to class files), compile
+        // only the sources that are stale
+        BuildState buildState = null;
+        if (stateFile != null && !spimOutput && debugOption.equals("")) {
+            buildState = BuildState.read(stateFile, sourceFiles, outputDir);
         }
-        if (errorHasOccurred) {
-            return;
+        ArrayList<JCompilationUnit> asts;
+        while (true) {
+            asts = new ArrayList<JCompilationUnit>();
+            for (String sourceFile : buildState == null ? sourceFiles
+                    : buildState.staleSources()) {
+                Stats.Measurement measurement = Stats.measureThread(session
+                        .stats(), "parse");
+                try {
+                    LookaheadScanner scanner = null;
+                    try {
+                        scanner = new LookaheadScanner(sourceFile);
+                    } catch (FileNotFoundException e) {
+                        session.err().println("Error: file " + sourceFile
+                                + " not found.");
+                        return true;
+                    }
+
+                    if (debugOption.equals("-t")) {
+                        // Just tokenize input and print the tokens to STDOUT
+                        TokenArray tokens = scanner.tokens();
+                        for (int i = 0; i < tokens.size(); i++) {
+                            session.out().printf("%d\t : %s = %s\n", tokens
+                                    .line(i), tokens.kind(i), tokens.image(i));
+                        }
+                        errorHasOccurred |= scanner.errorHasOccured();
+                        continue;
+                    }
+
+                    // Parse input
+                    Parser parser = new Parser(scanner, lazyOption);
+                    asts.add(parser.compilationUnit());
+                    errorHasOccurred |= parser.errorHasOccurred();
+                } finally {
+                    measurement.stop();
+                }
+            }
+            if (debugOption.equals("-t")) {
+                return errorHasOccurred;
+            }
+            if (debugOption.equals("-p")) {
+                writeToStdOut(asts);
+                return errorHasOccurred;
+            }
+            if (errorHasOccurred) {
+                return errorHasOccurred;
+            }
+            if (buildState != null) {
+                try {
+                    buildState.addPrebuilt(session);
+                } catch (IOException e) {
+                    session.err().println("Error: cannot read class file: "
+                            + e.getMessage());
+                    return true;
+                }
+            }
+
+            // Declare the types of all the units in the (global) symbol
+            // table they share
+            session.declareTypes(asts);
+            errorHasOccurred |= errorHasOccurredIn(asts);
+            if (errorHasOccurred) {
+                return errorHasOccurred;
+            }
+
+            // Do pre-analysis
+            session.preAnalyze(asts);
+            errorHasOccurred |= errorHasOccurredIn(asts);
+            if (debugOption.equals("-pa")) {
+                writeToStdOut(asts);
+                return errorHasOccurred;
+            }
+            if (errorHasOccurred) {
+                return errorHasOccurred;
+            }
+
+            // Recompile the sources depending on types whose
+            // signatures have changed, if any, afresh
+            if (buildState == null
+                    || !buildState.addStaleDependents(asts, session)) {
+                break;
+            }
+            session.reset();
         }
 
         // Do analysis
-        ast.analyze(null);
-        errorHasOccurred |= JAST.compilationUnit.errorHasOccurred();
+        session.analyze(asts);
+        errorHasOccurred |= errorHasOccurredIn(asts);
         if (debugOption.equals("-a")) {
-            ast.writeToStdOut(new PrettyPrinter());
-            return;
+            writeToStdOut(asts);
+            return errorHasOccurred;
         }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
         }
 
-        // Generate JVM code
-        CLEmitter clEmitter = new CLEmitter(!spimOutput);
-        clEmitter.destinationDir(outputDir);
-        ast.codegen(clEmitter);
-        errorHasOccurred |= clEmitter.errorHasOccurred();
+        // Generate JVM code, streaming the classes into a JAR if
+        // one was asked for
+        if (jarFile != null) {
+            try {
+                session.jar(new JarOutput(jarFile));
+            } catch (IOException e) {
+                session.err().println("Error: cannot write to file "
+                        + jarFile);
+                return true;
+            }
+        }
+        boolean generated = false;
+        try {
+            session.codegen(asts, !spimOutput && !runOption, outputDir);
+            generated = true;
+        } finally {
+            if (!generated && jarFile != null) {
+                // Code generation failed; don't leave the JAR open, or
+                // a partial JAR behind
+                closeJar(session, true);
+            }
+        }
+        errorHasOccurred |= errorHasOccurredIn(asts);
+        if (jarFile != null) {
+            errorHasOccurred |= closeJar(session, errorHasOccurred);
+        }
         if (errorHasOccurred) {
-            return;
+            return errorHasOccurred;
+        }
+
+        // If the program is to be run, load its classes into this
+        // JVM and invoke its main method
+        if (runOption) {
+            return Launcher.run(asts, session.classes(), programArgs,
+                    session);
         }
 
         // If SPIM output was asked for, convert the in-memory
         // JVM instructions to SPIM using the specified register
         // allocation scheme.
         if (spimOutput) {
-            NEmitter nEmitter = new NEmitter(sourceFile, ast.clFiles(),
-                    registerAllocation);
-            nEmitter.destinationDir(outputDir);
-            nEmitter.write();
-            errorHasOccurred |= nEmitter.errorHasOccurred();
+            Stats.Measurement measurement = Stats.measureThread(session
+                    .stats(), "spim");
+            for (JCompilationUnit ast : asts) {
+                NEmitter nEmitter = new NEmitter(ast.fileName(), ast
+                        .clFiles(), registerAllocation);
+                nEmitter.destinationDir(outputDir);
+                nEmitter.write();
+                errorHasOccurred |= nEmitter.errorHasOccurred();
+            }
+            measurement.stop();
+        }
+
+        // Store the output in the cache for the next compilation of
+        // the same sources
+        if (cacheKey != null && !errorHasOccurred) {
+            try {
+                outputCache.store(cacheKey, outputDir, session.outputs(),
+                        session.inputs());
+            } catch (IOException e) {
+                session.err().println("Error: cannot write to output cache: "
+                        + e.getMessage());
+            }
+        }
+
+        // Record the build state for the next compilation
+        if (buildState != null) {
+            buildState.update(asts, session);
+            try {
+                buildState.write(stateFile);
+            } catch (IOException e) {
+                session.err().println("Error: " + e.getMessage());
+                return true;
+            }
         }
+        return errorHasOccurred;
     }
 
     /**
@@ -177,7 +418,126 @@ public class Main {
     }
 
     /**
-     * Prints command usage to STDOUT.
+     * Replaces each argument of the form {@code @argfile} by the arguments 
+     * listed (separated by white space) in the file named argfile.
+     * 
+     * @param args
+     *            the command-line arguments.
+     * @return the expanded arguments.
+     * @exception IOException
+     *                if an argument file cannot be read.
+     */
+
+    static String[] expandArgFiles(String[] args) throws IOException {
+        ArrayList<String> expanded = new ArrayList<String>();
+        for (String arg : args) {
+            if (!arg.startsWith("@")) {
+                expanded.add(arg);
+                continue;
+            }
+            String argFile = arg.substring(1);
+            try {
+                String text = new String(Files.readAllBytes(Paths
+                        .get(argFile)));
+                for (String word : text.trim().split("\\s+")) {
+                    if (!word.equals("")) {
+                        expanded.add(word);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IOException("cannot read argument file " + argFile);
+            }
+        }
+        return expanded.toArray(new String[expanded.size()]);
+    }
+
+    /**
+     * Finishes writing the JAR of the specified session; if an error has
+     * occurred, the (incomplete) JAR is deleted.
+     * 
+     * @param session
+     *            the compilation session.
+     * @param errorHasOccurred
+     *            whether an error has occurred in code generation.
+     * @return {@code true} if the JAR cannot be written and {@code false}
+     *         otherwise.
+     */
+
+    private static boolean closeJar(Session session, 
+            boolean errorHasOccurred) {
+        JarOutput jar = session.jar();
+        session.jar(null);
+        try {
+            jar.close();
+        } catch (IOException e) {
+            session.err().println("Error: cannot write to file "
+                    + jar.fileName());
+            errorHasOccurred = true;
+        }
+        if (errorHasOccurred) {
+            new File(jar.fileName()).delete();
+            return true;
+        }
+        session.addOutput(jar.fileName());
+        return false;
+    }
+
+    /**
+     * Finishes gathering the statistics of the specified session, if any:
+     * writes the report to the session's STDOUT (if it was asked for), and
+     * emits the JFR events.
+     * 
+     * @param session
+     *            the compilation session.
+     * @param report
+     *            whether the report was asked for (with {@code -stats}).
+     */
+
+    static void finishStats(Session session, boolean report) {
+        Stats stats = session.stats();
+        if (stats == null) {
+            return;
+        }
+        if (report) {
+            stats.report(session.out());
+        }
+        stats.commitEvents();
+    }
+
+    /**
+     * Returns true if an error occurred in any of the specified compilation 
+     * units; false otherwise.
+     * 
+     * @param asts
+     *            the compilation units.
+     * @return {@code true} if an error has occurred and {@code false} 
+     *         otherwise.
+     */
+
+    static boolean errorHasOccurredIn(ArrayList<JCompilationUnit> asts) {
+        for (JCompilationUnit ast : asts) {
+            if (ast.errorHasOccurred()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the ASTs of the specified compilation units to STDOUT.
+     * 
+     * @param asts
+     *            the compilation units.
+     */
+
+    private static void writeToStdOut(ArrayList<JCompilationUnit> asts) {
+        for (JCompilationUnit ast : asts) {
+            ast.writeToStdOut(new PrettyPrinter());
+        }
+    }
+
+    /**
+     * Prints command usage to STDOUT (of the current session).
      * 
      * @param caller
      *            denotes how this class is invoked.
@@ -186,7 +546,7 @@ public class Main {
     private static void printUsage(String caller) {
         String usage = "Usage: "
                 + caller
-                + " <options> <source file>\n"
+                + " <options> <source files>\n"
                 + "where possible options include:\n"
                 + "  -t Only tokenize input and print tokens to STDOUT\n"
                 + "  -p Only parse input and print AST to STDOUT\n"
@@ -196,8 +556,28 @@ public class Main {
                 + "and print AST to STDOUT\n"
                 + "  -s <naive|linear|graph> Generate SPIM code\n"
                 + "  -r <num> Max. physical registers (1-18) available for allocation; default = 8\n"
-                + "  -d <dir> Specify where to place output files; default = .";
-        System.out.println(usage);
+                + "  -d <dir> Specify where to place output files; default = .\n"
+                + "  -jar <file> Write the class files into a JAR file, "
+                + "rather than to the output directory\n"
+                + "  -i <file> Keep build state in file, and recompile only the "
+                + "sources affected by changes\n"
+                + "  -c <dir> Cache output in dir, keyed by the sources, "
+                + "options and class path\n"
+                + "  -run Run the program (the first type having a main "
+                + "method) without writing\n"
+                + "     class files, passing it any arguments after -- "
+                + "(not with -server or -batch)\n"
+                + "  -lazy Parse method bodies only when they are analyzed "
+                + "(so -pa reports\n"
+                + "     no syntax errors in them)\n"
+                + "  -stats Report time, allocation and counts for each phase\n"
+                + "  @<file> Read options and source files from file\n"
+                + "  -server [<port>] Serve compile requests, each a line of "
+                + "options and source files,\n"
+                + "     on STDIN (or on a local socket at port)\n"
+                + "  -batch <manifest> Compile the independent programs listed, "
+                + "one per line, in manifest";
+        Session.current().out().println(usage);
     }
 
 }
@@ -0,0 +1,137 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the members declared by a class: its methods by name and then
+ * by signature (the descriptors of their parameter types, as in
+ * {@link Type#argTypesMatch(Class[], Class[])}), its constructors by
+ * signature, and its fields by name. A member having the same name (and
+ * signature) as one before it in the class's declared order is not indexed;
+ * so a lookup finds what a linear search of the declared members would.
+ * <p>
+ * The index of a class is built (by reflection) once, when it's first asked
+ * for, and shared by all the lookups in all the compilations in the process;
+ * it lives as long as the class does. It is used by {@link Type#methodFor},
+ * {@link Type#constructorFor} and {@link Type#fieldFor}, which look up a
+ * member in the index of each class along the superclass chain, rather than
+ * searching copies of the reflective arrays of declared members.
+ */
+
+class MemberIndex {
+
+    /** The index of each class. */
+    private static final ClassValue<MemberIndex> indexes =
+        new ClassValue<MemberIndex>() {
+            protected MemberIndex computeValue(Class<?> cls) {
+                return new MemberIndex(cls);
+            }
+        };
+
+    /** Maps the names of the methods to the methods by signature. */
+    private final Map<String, Map<String, java.lang.reflect.Method>> methods;
+
+    /** Maps the signatures of the constructors to the constructors. */
+    private final Map<String, java.lang.reflect.Constructor<?>> constructors;
+
+    /** Maps the names of the fields to the fields. */
+    private final Map<String, java.lang.reflect.Field> fields;
+
+    /**
+     * Constructs the index of the members declared by the specified class.
+     *
+     * @param cls
+     *            the class.
+     */
+
+    private MemberIndex(Class<?> cls) {
+        methods = new HashMap<String, Map<String, java.lang.reflect.Method>>();
+        for (java.lang.reflect.Method method : cls.getDeclaredMethods()) {
+            methods.computeIfAbsent(method.getName(),
+                    name -> new HashMap<String, java.lang.reflect.Method>())
+                    .putIfAbsent(signature(method.getParameterTypes()), method);
+        }
+        constructors = new HashMap<String, java.lang.reflect.Constructor<?>>();
+        for (java.lang.reflect.Constructor<?> constructor : cls
+                .getDeclaredConstructors()) {
+            constructors.putIfAbsent(signature(constructor
+                    .getParameterTypes()), constructor);
+        }
+        fields = new HashMap<String, java.lang.reflect.Field>();
+        for (java.lang.reflect.Field field : cls.getDeclaredFields()) {
+            fields.putIfAbsent(field.getName(), field);
+        }
+    }
+
+    /**
+     * Returns the index of the members declared by the specified class.
+     *
+     * @param cls
+     *            the class.
+     * @return the index.
+     */
+
+    public static MemberIndex of(Class<?> cls) {
+        return indexes.get(cls);
+    }
+
+    /**
+     * Returns the signature of a member having the specified parameter (or
+     * argument) types.
+     *
+     * @param parameterTypes
+     *            the parameter types.
+     * @return the signature.
+     */
+
+    public static String signature(Class<?>[] parameterTypes) {
+        StringBuilder signature = new StringBuilder();
+        for (Class<?> parameterType : parameterTypes) {
+            signature.append(Type.descriptorFor(parameterType));
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Returns the method declared having the specified name and signature.
+     *
+     * @param name
+     *            the name.
+     * @param signature
+     *            the signature.
+     * @return the method; {@code null} if there is none.
+     */
+
+    public java.lang.reflect.Method method(String name, String signature) {
+        Map<String, java.lang.reflect.Method> overloads = methods.get(name);
+        return overloads == null ? null : overloads.get(signature);
+    }
+
+    /**
+     * Returns the constructor declared having the specified signature.
+     *
+     * @param signature
+     *            the signature.
+     * @return the constructor; {@code null} if there is none.
+     */
+
+    public java.lang.reflect.Constructor<?> constructor(String signature) {
+        return constructors.get(signature);
+    }
+
+    /**
+     * Returns the field declared having the specified name.
+     *
+     * @param name
+     *            the name.
+     * @return the field; {@code null} if there is none.
+     */
+
+    public java.lang.reflect.Field field(String name) {
+        return fields.get(name);
+    }
+
+}
@@ -380,22 +380,22 @@ class NControlFlowGraph {
     private HashMap<Integer, NBasicBlock> pcToBasicBlock;
 
     /** block identifier. */
-    public static int blockId;
+    public int blockId;
 
     /** HIR instruction identifier. */
-    public static int hirId;
+    public int hirId;
 
-    /** HIR instruction identifier. */
-    public static int lirId;
+    /** LIR instruction identifier. */
+    public int lirId;
 
     /** Virtual register identifier. */
-    public static int regId;
+    public int regId;
 
     /** Stack offset counter.. */
     public int offset;
 
     /** Loop identifier. */
-    public static int loopIndex;
+    public int loopIndex;
 
     /** Name of the method this cfg corresponds to. */
     public String name;
@@ -436,6 +436,9 @@ class NControlFlowGraph {
     /** Used to construct jump labels in spim output. */
     public String labelPrefix;
 
+    /** The emitter writing the spim output, which labels string constants. */
+    public NEmitter emitter;
+
     /**
      * SPIM code for string literals added to the data segment.
      */
@@ -693,7 +696,7 @@ class NControlFlowGraph {
             block.isLoopHead = true;
             pred.isLoopTail = true;
             block.bwdBranches++;
-            block.loopIndex = NControlFlowGraph.loopIndex++;
+            block.loopIndex = loopIndex++;
         }
     }
 
@@ -1472,7 +1475,7 @@ class NControlFlowGraph {
                 args.add(a.locals[i]);
                 args.add(b.locals[i]);
                 NHIRInstruction ins = new NHIRPhiFunction(a,
-                        NControlFlowGraph.hirId++, args, i);
+                        hirId++, args, i);
                 a.locals[i] = ins.id;
                 a.hir.add(ins.id);
                 a.cfg.hirMap.put(ins.id, ins);
@@ -14,6 +14,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 /**
  * A class for generating native SPIM code.
@@ -26,18 +27,25 @@ public class NEmitter {
 
     /**
      * Map of maps, one per class in the compilation unit. Each one of them maps
-     * methods in a class to their control flow graph.
+     * methods in a class to their control flow graph. Both are linked maps, so
+     * that the classes and methods are written in a deterministic order.
      */
     private HashMap<CLFile, HashMap<CLMethodInfo, NControlFlowGraph>> classes;
 
     /** Destination directory for the native SPIM code. */
     private String destDir;
 
+    /** Statistics gathered over the compilation; {@code null} if none. */
+    private Stats stats;
+
     /**
      * Whether an error occurred while creating/writing SPIM code.
      */
     private boolean errorHasOccurred;
 
+    /** Number of string constants labelled in the output. */
+    private int stringConstants;
+
     /**
      * Report any error that occurs while creating/writing the spim file, to
      * STDERR.
@@ -49,8 +57,8 @@ public class NEmitter {
      */
 
     private void reportEmitterError(String message, Object... args) {
-        System.err.printf(message, args);
-        System.err.println();
+        Session.current().report(new Diagnostic(null, 0, String.format(
+                message, args)));
         errorHasOccurred = true;
     }
 
@@ -133,11 +141,12 @@ public class NEmitter {
     public NEmitter(String sourceFile, ArrayList<CLFile> clFiles, String ra) {
         this.sourceFile = sourceFile.substring(sourceFile
                 .lastIndexOf(File.separator) + 1);
-        classes = new HashMap<CLFile, HashMap<CLMethodInfo, NControlFlowGraph>>();
+        stats = Session.current().stats();
+        classes = new LinkedHashMap<CLFile, HashMap<CLMethodInfo, NControlFlowGraph>>();
         for (CLFile clFile : clFiles) {
             CLConstantPool cp = clFile.constantPool;
             HashMap<CLMethodInfo, NControlFlowGraph> methods = 
-                                    new HashMap<CLMethodInfo, NControlFlowGraph>();
+                              new LinkedHashMap<CLMethodInfo, NControlFlowGraph>();
 
             for (int i = 0; i < clFile.methodsCount; i++) {
                 CLMethodInfo m = clFile.methods.get(i);
@@ -146,7 +155,10 @@ public class NEmitter {
                 // Each block in the cfg, at the end of this step,
                 // has the JVM bytecode translated into tuple
                 // representation.
+                Stats.Measurement measurement = Stats.measureThread(stats,
+                        "spim/buildCfg");
                 NControlFlowGraph cfg = new NControlFlowGraph(cp, m);
+                measurement.stop();
 
                 // Write the tuples in cfg to STDOUT.
                 PrettyPrinter p = new PrettyPrinter();
@@ -156,45 +168,58 @@ public class NEmitter {
                 // Identify blocks in cfg that are loop heads and
                 // loop tails. Also, compute number of backward
                 // branches to blocks.
-                cfg.detectLoops(cfg.basicBlocks.get(0), null);
+                stage("detectLoops",
+                        () -> cfg.detectLoops(cfg.basicBlocks.get(0), null));
 
                 // Remove unreachable blocks from cfg.
-                cfg.removeUnreachableBlocks();
+                stage("removeUnreachableBlocks",
+                        () -> cfg.removeUnreachableBlocks());
 
                 // Compute the dominator of each block in the cfg.
-                cfg.computeDominators(cfg.basicBlocks.get(0), null);
+                stage("computeDominators", () -> cfg.computeDominators(
+                        cfg.basicBlocks.get(0), null));
 
                 // Convert the tuples in each block in the cfg to
                 // high-level (HIR) instructions.
-                cfg.tuplesToHir();
+                stage("tuplesToHir", () -> cfg.tuplesToHir());
 
                 // Eliminate redundant phi functions, i.e., replace
                 // phi functions of the form x = (y, x, x, ..., x)
                 // with y.
-                cfg.eliminateRedundantPhiFunctions();
+                stage("eliminateRedundantPhiFunctions",
+                        () -> cfg.eliminateRedundantPhiFunctions());
 
                 // Perform optimizations on the high-level
                 // instructions.
-                cfg.optimize();
+                stage("optimize", () -> cfg.optimize());
 
                 // Write the HIR instructions in cfg to STDOUT.
                 cfg.writeHirToStdOut(p);
+                if (stats != null) {
+                    stats.count("HIR instructions", cfg.hirMap.size());
+                }
 
                 // Convert the HIR instructions in each block in the
                 // cfg to low-level (LIR) instructions.
-                cfg.hirToLir();
+                stage("hirToLir", () -> cfg.hirToLir());
 
                 // Resolve phi functions;
-                cfg.resolvePhiFunctions();
+                stage("resolvePhiFunctions", () -> cfg.resolvePhiFunctions());
 
                 // Compute block order.
-                cfg.orderBlocks();
+                stage("orderBlocks", () -> cfg.orderBlocks());
 
                 // Assign new ids to LIR instructions.
-                cfg.renumberLirInstructions();
+                stage("renumberLirInstructions",
+                        () -> cfg.renumberLirInstructions());
 
                 // Write the LIR instructions in cfg to STDOUT.
                 cfg.writeLirToStdOut(p);
+                if (stats != null) {
+                    for (NBasicBlock block : cfg.basicBlocks) {
+                        stats.count("LIR instructions", block.lir.size());
+                    }
+                }
 
                 // Save the cfg for the method in a map keyed in by
                 // the CLMethodInfo object for the method.
@@ -209,14 +234,18 @@ public class NEmitter {
                 } else {
                     regAllocator = new NGraphRegisterAllocator(cfg);
                 }
-                regAllocator.allocation();
+                stage("allocation", () -> regAllocator.allocation());
 
                 // Write the intervals in cfg to STDOUT.
                 cfg.writeIntervalsToStdOut(p);
+                if (stats != null) {
+                    stats.count("intervals", cfg.intervals.size());
+                }
 
                 // Replace references to virtual registers in LIR
                 // instructions with references to physical registers.
-                cfg.allocatePhysicalRegisters();
+                stage("allocatePhysicalRegisters",
+                        () -> cfg.allocatePhysicalRegisters());
 
                 // Write the LIR instructions in cfg to STDOUT.
                 cfg.writeLirToStdOut(p);
@@ -235,6 +264,23 @@ public class NEmitter {
         }
     }
 
+    /**
+     * Runs the specified stage of the translation of a method, measuring it
+     * if statistics are being gathered.
+     * 
+     * @param name
+     *            name of the stage.
+     * @param stage
+     *            the stage.
+     */
+
+    private void stage(String name, Runnable stage) {
+        Stats.Measurement measurement = Stats.measureThread(stats, "spim/"
+                + name);
+        stage.run();
+        measurement.stop();
+    }
+
     /**
      * Sets the destination directory for the SPIM files to the specified value.
      * 
@@ -256,15 +302,30 @@ public class NEmitter {
         return errorHasOccurred;
     }
 
+    /**
+     * Returns a new label for a string constant in the output; the labels
+     * are numbered from 0 in each file.
+     * 
+     * @return the label.
+     */
+
+    public String stringConstantLabel() {
+        return "Constant..String" + stringConstants++;
+    }
+
     /**
      * Writes out SPIM file(s) to the file system. The destination directory for
      * the files can be set using the {@code destinationDir} method.
      */
 
     public void write() {
+        Stats.Measurement measurement = Stats.measureThread(stats,
+                "spim/write");
         String file = "";
+        stringConstants = 0;
         try {
             file = destDir + File.separator + sourceFile.replace(".java", ".s");
+            String outFile = file;
             PrintWriter out = new PrintWriter(file);
 
             // Header.
@@ -298,6 +359,7 @@ public class NEmitter {
                         out.printf("%s.%s:\n", className, methodName);
                         cfg.labelPrefix = className + "." + methodName;
                     }
+                    cfg.emitter = this;
 
                     // Setup stack frame for this method
                     pushStackFrame(cfg, out);
@@ -341,11 +403,13 @@ public class NEmitter {
             }
 
             out.close();
+            Session.current().addOutput(outFile);
         } catch (FileNotFoundException e) {
             reportEmitterError("File %s not found", file);
         } catch (IOException e) {
             reportEmitterError("Cannot write to file %s", file);
         }
+        measurement.stop();
     }
 
 }
@@ -40,12 +40,12 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
 
         // Instantiate usePositions and freePos to be the size of
         // the physical registers used.
-        freePos  = new int[MAX_COUNT];
-        usePos   = new int[MAX_COUNT];
-        blockPos = new int[MAX_COUNT];
+        freePos  = new int[maxCount];
+        usePos   = new int[maxCount];
+        blockPos = new int[maxCount];
         
         regIntervals = new ArrayList<ArrayList<NInterval>>();
-        for (int i = 0; i < MAX_COUNT; i++) {
+        for (int i = 0; i < maxCount; i++) {
             regIntervals.add(new ArrayList<NInterval>());
         }
     }
@@ -155,7 +155,7 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
         }
 
         // The physical registers available are in NPhysicalRegister.regInfo
-        // static array. This is indexed from 0 to NPhysicalRegister.MAX_COUNT
+        // static array. This is indexed from 0 to maxCount
         int reg = this.getBestFreeReg();
         if (freePos[reg] == 0) {
             return false;
@@ -179,7 +179,7 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
      */
 
     private void initFreePositions() {
-        for (int i = 0; i < MAX_COUNT; i++) {
+        for (int i = 0; i < maxCount; i++) {
             freePos[i] = Integer.MAX_VALUE;
         }
     }
@@ -192,7 +192,7 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
 
     private int getBestFreeReg() {
         int freeRegNumber = 0;
-        for (int i = 0; i < MAX_COUNT; i++) {
+        for (int i = 0; i < maxCount; i++) {
             if (freePos[i] > freePos[freeRegNumber])
                 freeRegNumber = i;
         }
@@ -252,7 +252,7 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
      */
 
     private void initUseAndBlockPositions() {
-        for (int i = 0; i < MAX_COUNT; i++) {
+        for (int i = 0; i < maxCount; i++) {
             usePos[i]   = Integer.MAX_VALUE;
             blockPos[i] = Integer.MAX_VALUE;
         }
@@ -266,7 +266,7 @@ public class NLinearRegisterAllocator extends NRegisterAllocator {
 
     private int getBestBlockedReg() {
         int usableRegNumber = 0;
-        for (int i = 0; i < MAX_COUNT; i++) {
+        for (int i = 0; i < maxCount; i++) {
             if (usePos[i] > usePos[usableRegNumber])
                 usableRegNumber = i;
         }
@@ -17,6 +17,12 @@ public abstract class NRegisterAllocator {
     /** The control flow graph for a method. */
     protected NControlFlowGraph cfg;
 
+    /**
+     * Maximum number of physical registers used for allocation, starting at 
+     * T0 (set from the current {@link Session}).
+     */
+    protected int maxCount;
+
     /**
      * Constructs a {@code NRegisterAllocator} object given the control flow 
      * graph for method.
@@ -27,6 +33,7 @@ public abstract class NRegisterAllocator {
 
     protected NRegisterAllocator(NControlFlowGraph cfg) {
         this.cfg = cfg;
+        this.maxCount = Session.current().maxRegisterCount();
         this.cfg.intervals = new ArrayList<NInterval>();
         for (int i = 0; i < cfg.registers.size(); i++) {
             this.cfg.intervals.add(new NInterval(i, cfg));
@@ -0,0 +1,109 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The compiler-wide table of names. The scanner interns each identifier here
+ * straight from the source buffer, so that every occurrence of a name is the
+ * same String: a String is created only for the first occurrence, and names
+ * compare (and are found in the symbol tables' hash maps) by identity.
+ * <p>
+ * Each thread looks a name up first in a small cache of its own, and only on
+ * a miss in the table shared by all threads.
+ */
+
+class NameTable {
+
+    /** Size of each thread's cache; a power of 2. */
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * Number of names beyond which the table is emptied (so that a resident
+     * compiler does not keep the names of every program it has compiled).
+     */
+    private static final int MAX_NAMES = 1 << 20;
+
+    /** The names. */
+    private static final ConcurrentHashMap<String, String> names =
+        new ConcurrentHashMap<String, String>();
+
+    /** Each thread's cache of names, indexed by hash. */
+    private static final ThreadLocal<String[]> caches =
+        ThreadLocal.withInitial(() -> new String[CACHE_SIZE]);
+
+    /**
+     * Returns the name made up of the specified characters.
+     *
+     * @param chars
+     *            the buffer holding the characters.
+     * @param offset
+     *            index of the first character in the buffer.
+     * @param length
+     *            number of characters.
+     * @return the name.
+     */
+
+    public static String intern(char[] chars, int offset, int length) {
+        // The same hash as String's
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        String[] cache = caches.get();
+        int index = (hash ^ hash >>> 16) & (CACHE_SIZE - 1);
+        String name = cache[index];
+        if (name != null && name.hashCode() == hash
+                && matches(name, chars, offset, length)) {
+            return name;
+        }
+        name = intern(new String(chars, offset, length));
+        cache[index] = name;
+        return name;
+    }
+
+    /**
+     * Returns the name equal to the specified string.
+     *
+     * @param name
+     *            the string.
+     * @return the name.
+     */
+
+    public static String intern(String name) {
+        if (names.size() > MAX_NAMES) {
+            names.clear();
+        }
+        String interned = names.putIfAbsent(name, name);
+        return interned == null ? name : interned;
+    }
+
+    /**
+     * Is the specified name made up of the specified characters?
+     *
+     * @param name
+     *            the name.
+     * @param chars
+     *            the buffer holding the characters.
+     * @param offset
+     *            index of the first character in the buffer.
+     * @param length
+     *            number of characters.
+     * @return {@code true} if it is, and {@code false} otherwise.
+     */
+
+    private static boolean matches(String name, char[] chars, int offset,
+            int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
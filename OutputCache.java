@@ -0,0 +1,211 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A content-addressed cache of compiler output on the local file system
+ * (given with {@code -c <dir>}). An entry holds the bytes of the .class files
+ * written by a compilation, and is keyed by a digest of the compiler options,
+ * the text of the source files, the JDK and the class path; so when the same
+ * sources are compiled again with the same options, the files can be written
+ * straight from the cache, without parsing, analysis or code generation.
+ * <p>
+ * The entry also records the size and modification time of each file of
+ * the class path that the compilation read a type from (see
+ * {@link Session#inputs()}), and is used only while they are unchanged. So
+ * the cache is not fooled by a class that has been recompiled since, and
+ * the class path is not walked to make the key; nor do other files in its
+ * directories (the output written by a compilation, or this cache) change
+ * the key. SPIM output is not cached, as a compilation producing it also
+ * writes the intermediate code to STDOUT.
+ * <p>
+ * An entry is written to a temporary file and then moved into place, so
+ * compilations sharing a cache never see a partly written entry.
+ */
+
+class OutputCache {
+
+    /** Version of the compiler output, part of every key. */
+    private static final String VERSION = "j-- output cache 3";
+
+    /** Directory holding the entries. */
+    private File dir;
+
+    /**
+     * Constructs a cache held in the specified directory.
+     *
+     * @param dir
+     *            directory holding the entries.
+     */
+
+    public OutputCache(String dir) {
+        this.dir = new File(dir);
+    }
+
+    /**
+     * Returns the key for compiling the specified source files with the
+     * specified options, in this JVM (with its JDK and class path, which is
+     * taken by name; the files read from it are checked by
+     * {@link #restore(String, String)}).
+     *
+     * @param options
+     *            the compiler options.
+     * @param sourceFiles
+     *            the source files.
+     * @return the key; {@code null} if a source file cannot be read.
+     */
+
+    public static String key(List<String> options,
+            ArrayList<String> sourceFiles) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream key = new DataOutputStream(bytes);
+            key.writeUTF(VERSION);
+            key.writeUTF(String.valueOf(System.getProperty("java.home")));
+            key.writeUTF(String.valueOf(System
+                    .getProperty("java.runtime.version")));
+            key.writeUTF(System.getProperty("java.class.path", ""));
+            for (String option : options) {
+                key.writeUTF(option);
+            }
+            for (String sourceFile : sourceFiles) {
+                byte[] text = Files.readAllBytes(Paths.get(sourceFile));
+                key.writeUTF(sourceFile);
+                key.writeInt(text.length);
+                key.write(text);
+            }
+            key.close();
+            return BuildState.digest(bytes.toByteArray());
+        } catch (IOException e) {
+            // Leave it to the scanner to report
+            return null;
+        }
+    }
+
+    /**
+     * Writes the files of the entry having the specified key, if there is
+     * one, and the files of the class path it was compiled against are
+     * unchanged, to the specified output directory.
+     *
+     * @param key
+     *            the key.
+     * @param outputDir
+     *            the output directory.
+     * @return {@code true} if the entry was found (and is current) and its
+     *         files written, and {@code false} otherwise.
+     * @exception IOException
+     *                if the entry or a file cannot be read or written.
+     */
+
+    public boolean restore(String key, String outputDir) throws IOException {
+        File entry = new File(dir, key);
+        if (!entry.exists()) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(entry));
+        try {
+            for (int i = in.readInt(); i > 0; i--) {
+                File input = new File(in.readUTF());
+                if (input.length() != in.readLong()
+                        || input.lastModified() != in.readLong()) {
+                    // Compiled against another version of the class
+                    return false;
+                }
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Path file = Paths.get(outputDir, in.readUTF());
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                Files.write(file, bytes);
+                Session.current().addOutput(file.toString());
+            }
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * Stores the specified files, written to the specified output directory,
+     * as the entry having the specified key, along with the stamps of the
+     * specified files of the class path that they were compiled against (but
+     * for the output files themselves, where the output directory is on the
+     * class path).
+     *
+     * @param key
+     *            the key.
+     * @param outputDir
+     *            the output directory.
+     * @param outputs
+     *            names of the files.
+     * @param inputs
+     *            names of the files of the class path.
+     * @exception IOException
+     *                if a file cannot be read or the entry cannot be written.
+     */
+
+    public void store(String key, String outputDir, List<String> outputs,
+            Collection<String> inputs) throws IOException {
+        ArrayList<Path> written = new ArrayList<Path>();
+        for (String output : outputs) {
+            written.add(Paths.get(output).toAbsolutePath().normalize());
+        }
+        ArrayList<File> stamped = new ArrayList<File>();
+        for (String input : inputs) {
+            Path file = Paths.get(input).toAbsolutePath().normalize();
+            if (!written.contains(file)) {
+                stamped.add(file.toFile());
+            }
+        }
+        dir.mkdirs();
+        File temp = File.createTempFile(key, ".tmp", dir);
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(
+                    temp));
+            try {
+                out.writeInt(stamped.size());
+                for (File file : stamped) {
+                    out.writeUTF(file.getPath());
+                    out.writeLong(file.length());
+                    out.writeLong(file.lastModified());
+                }
+                out.writeInt(outputs.size());
+                for (String output : outputs) {
+                    byte[] bytes = Files.readAllBytes(Paths.get(output));
+                    out.writeUTF(Paths.get(outputDir).relativize(
+                            Paths.get(output)).toString());
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), new File(dir, key).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+    }
+
+}
@@ -3,6 +3,7 @@
 package jminusminus;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import static jminusminus.TokenKind.*;
 
@@ -28,6 +29,79 @@ public class Parser {
     /** Whether we have recovered from a parser error. */
     private boolean isRecovered;
 
+    /**
+     * Whether the parsing of method and constructor bodies is put off until
+     * they are analyzed (see {@link JLazyBlock}).
+     */
+    private boolean lazyBodies;
+
+    /** Whether parser errors are reported (or just noted). */
+    private boolean reportErrors;
+
+    /** The bodies skipped over in lazy parsing, in the order found. */
+    private ArrayList<JLazyBlock> lazyBlocks;
+
+    /**
+     * Number of tokens from which a compilation unit's method and
+     * constructor bodies are parsed in parallel.
+     */
+    private static final int PARALLEL_TOKENS = 1 << 14;
+
+    /** Precedence of the relational operators. */
+    private static final int RELATIONAL = 7;
+
+    /**
+     * Precedence of the binary operators, by the ordinals of their token
+     * kinds; 0 for the other tokens. The higher the precedence, the tighter
+     * an operator binds.
+     */
+    private static final int[] PRECEDENCE = new int[TokenKind.values().length];
+
+    static {
+        PRECEDENCE[LOR.ordinal()] = 1;
+        PRECEDENCE[LAND.ordinal()] = 2;
+        PRECEDENCE[OR.ordinal()] = 3;
+        PRECEDENCE[XOR.ordinal()] = 4;
+        PRECEDENCE[AND.ordinal()] = 5;
+        PRECEDENCE[EQUAL.ordinal()] = 6;
+        PRECEDENCE[NEQUAL.ordinal()] = 6;
+        PRECEDENCE[GT.ordinal()] = RELATIONAL;
+        PRECEDENCE[LS.ordinal()] = RELATIONAL;
+        PRECEDENCE[GE.ordinal()] = RELATIONAL;
+        PRECEDENCE[LE.ordinal()] = RELATIONAL;
+        PRECEDENCE[INSTANCEOF.ordinal()] = RELATIONAL;
+        PRECEDENCE[ALS.ordinal()] = 8;
+        PRECEDENCE[ARS.ordinal()] = 8;
+        PRECEDENCE[LRS.ordinal()] = 8;
+        PRECEDENCE[MINUS.ordinal()] = 9;
+        PRECEDENCE[PLUS.ordinal()] = 9;
+        PRECEDENCE[STAR.ordinal()] = 10;
+        PRECEDENCE[DIV.ordinal()] = 10;
+        PRECEDENCE[REM.ordinal()] = 10;
+    }
+
+    /** The lookahead predicates, whose answers are memoized. */
+    private static final int IDENT_LPAREN = 0, CAST = 1,
+            LOCAL_VARIABLE_DECLARATION = 2, REFERENCE_TYPE = 3, DIMS = 4;
+
+    /**
+     * Number of token positions whose predicate answers are remembered; a
+     * power of 2.
+     */
+    private static final int MEMO_SIZE = 64;
+
+    /**
+     * The token position each entry of the memo table is for, or -1; the
+     * entry for a position is at the position modulo MEMO_SIZE.
+     */
+    private int[] memoPositions;
+
+    /** For each entry, a bit set of the predicates that have been answered. */
+    private byte[] memoAnswered;
+
+    /** For each entry, a bit set of the predicates answered true. */
+    private byte[] memoAnswers;
+
     /**
      * Constructs a parser from the given lexical analyzer.
      * 
@@ -36,9 +110,49 @@ public class Parser {
      */
 
     public Parser(LookaheadScanner scanner) {
+        this(scanner, false);
+    }
+
+    /**
+     * Constructs a parser from the given lexical analyzer, which skips over
+     * method and constructor bodies (leaving them to be parsed when they are
+     * analyzed) if so directed.
+     * 
+     * @param scanner
+     *            the lexical analyzer with which tokens are scanned.
+     * @param lazyBodies
+     *            whether the parsing of bodies is put off.
+     */
+
+    public Parser(LookaheadScanner scanner, boolean lazyBodies) {
+        this(scanner, lazyBodies, true);
+    }
+
+    /**
+     * Constructs a parser from the given lexical analyzer, which skips over
+     * bodies if so directed, and reports the errors it finds or just notes
+     * them.
+     * 
+     * @param scanner
+     *            the lexical analyzer with which tokens are scanned.
+     * @param lazyBodies
+     *            whether the parsing of bodies is put off.
+     * @param reportErrors
+     *            whether errors are reported.
+     */
+
+    public Parser(LookaheadScanner scanner, boolean lazyBodies,
+            boolean reportErrors) {
         this.scanner = scanner;
+        this.lazyBodies = lazyBodies;
+        this.reportErrors = reportErrors;
+        lazyBlocks = new ArrayList<JLazyBlock>();
         isInError = false;
         isRecovered = true;
+        memoPositions = new int[MEMO_SIZE];
+        Arrays.fill(memoPositions, -1);
+        memoAnswered = new byte[MEMO_SIZE];
+        memoAnswers = new byte[MEMO_SIZE];
         scanner.next(); // Prime the pump
     }
 
@@ -65,7 +179,7 @@ public class Parser {
      */
 
     private boolean see(TokenKind sought) {
-        return (sought == scanner.token().kind());
+        return (sought == scanner.kind());
     }
 
     /**
@@ -102,13 +216,13 @@ public class Parser {
      */
 
     private void mustBe(TokenKind sought) {
-        if (scanner.token().kind() == sought) {
+        if (scanner.kind() == sought) {
             scanner.next();
             isRecovered = true;
         } else if (isRecovered) {
             isRecovered = false;
-            reportParserError("%s found where %s sought", scanner.token()
-                    .image(), sought.image());
+            reportParserError("%s found where %s sought", scanner.image(),
+                    sought.image());
         } else {
             // Do not report the (possibly spurious) error,
             // but rather attempt to recover by forcing a match.
@@ -151,16 +265,65 @@ public class Parser {
     private void reportParserError(String message, Object... args) {
         isInError = true;
         isRecovered = false;
-        System.err
-                .printf("%s:%d: ", scanner.fileName(), scanner.token().line());
-        System.err.printf(message, args);
-        System.err.println();
+        if (!reportErrors) {
+            return;
+        }
+        Session.current().report(new Diagnostic(scanner.fileName(), scanner
+                .token().line(), String.format(message, args)));
     }
 
     // ////////////////////////////////////////////////
     // Lookahead /////////////////////////////////////
     // ////////////////////////////////////////////////
 
+    /**
+     * Answers the specified lookahead predicate at the current token. The
+     * answer depends only on the tokens from here on, so it is looked ahead
+     * for only the first time the predicate is asked at this position, and
+     * remembered (in a packrat-style memo table) for when it is asked again,
+     * after backtracking.
+     * 
+     * @param predicate
+     *            the predicate.
+     * @return the answer.
+     */
+
+    private boolean lookahead(int predicate) {
+        int position = scanner.position();
+        int entry = position & (MEMO_SIZE - 1);
+        int bit = 1 << predicate;
+        if (memoPositions[entry] != position) {
+            memoPositions[entry] = position;
+            memoAnswered[entry] = 0;
+            memoAnswers[entry] = 0;
+        } else if ((memoAnswered[entry] & bit) != 0) {
+            return (memoAnswers[entry] & bit) != 0;
+        }
+        boolean answer;
+        switch (predicate) {
+        case IDENT_LPAREN:
+            answer = lookForIdentLParen();
+            break;
+        case CAST:
+            answer = lookForCast();
+            break;
+        case LOCAL_VARIABLE_DECLARATION:
+            answer = lookForLocalVariableDeclaration();
+            break;
+        case REFERENCE_TYPE:
+            answer = lookForReferenceType();
+            break;
+        default:
+            answer = lookForDims();
+            break;
+        }
+        memoAnswered[entry] |= bit;
+        if (answer) {
+            memoAnswers[entry] |= bit;
+        }
+        return answer;
+    }
+
     /**
      * Are we looking at an IDENTIFIER followed by a LPAREN? Look ahead to find
      * out.
@@ -169,6 +332,16 @@ public class Parser {
      */
 
     private boolean seeIdentLParen() {
+        return lookahead(IDENT_LPAREN);
+    }
+
+    /**
+     * Looks ahead for an IDENTIFIER followed by a LPAREN.
+     * 
+     * @return true iff we're looking at IDENTIFIER LPAREN; false otherwise.
+     */
+
+    private boolean lookForIdentLParen() {
         scanner.recordPosition();
         boolean result = have(IDENTIFIER) && see(LPAREN);
         scanner.returnToPosition();
@@ -188,6 +361,16 @@ public class Parser {
      */
 
     private boolean seeCast() {
+        return lookahead(CAST);
+    }
+
+    /**
+     * Looks ahead for a cast.
+     * 
+     * @return true iff we're looking at a cast; false otherwise.
+     */
+
+    private boolean lookForCast() {
         scanner.recordPosition();
         if (!have(LPAREN)) {
             scanner.returnToPosition();
@@ -238,6 +421,17 @@ public class Parser {
      */
 
     private boolean seeLocalVariableDeclaration() {
+        return lookahead(LOCAL_VARIABLE_DECLARATION);
+    }
+
+    /**
+     * Looks ahead for a local variable declaration.
+     * 
+     * @return true iff we are looking at local variable declaration; false
+     *         otherwise.
+     */
+
+    private boolean lookForLocalVariableDeclaration() {
         scanner.recordPosition();
         if (have(IDENTIFIER)) {
             // A qualified identifier is ok
@@ -299,6 +493,16 @@ public class Parser {
      */
 
     private boolean seeReferenceType() {
+        return lookahead(REFERENCE_TYPE);
+    }
+
+    /**
+     * Looks ahead for a reference type.
+     * 
+     * @return true iff we're looking at a reference type; false otherwise.
+     */
+
+    private boolean lookForReferenceType() {
         if (see(IDENTIFIER)) {
             return true;
         } else {
@@ -321,6 +525,16 @@ public class Parser {
      */
 
     private boolean seeDims() {
+        return lookahead(DIMS);
+    }
+
+    /**
+     * Looks ahead for [].
+     * 
+     * @return true iff we're looking at a [] pair; false otherwise.
+     */
+
+    private boolean lookForDims() {
         scanner.recordPosition();
         boolean result = have(LBRACK) && see(RBRACK);
         scanner.returnToPosition();
@@ -333,7 +547,9 @@ public class Parser {
 
     /**
      * Parse a compilation unit (a program file) and construct an AST for it.
-     * After constructing the Parser, this is its entry point.
+     * After constructing the Parser, this is its entry point. The method and
+     * constructor bodies of a large unit are parsed in parallel, once the
+     * rest of the unit has been (see {@link Session#parse(ArrayList)}).
      * 
      * <pre>
      *   compilationUnit ::= [PACKAGE qualifiedIdentifier SEMI]
@@ -346,7 +562,41 @@ public class Parser {
      */
 
     public JCompilationUnit compilationUnit() {
-        int line = scanner.token().line();
+        if (lazyBodies || scanner.tokens().size() < PARALLEL_TOKENS) {
+            return parseCompilationUnit();
+        }
+
+        // Parse the skeleton of the unit, skipping over the bodies, and
+        // then the bodies, in parallel; noting errors, but not reporting
+        // them
+        LookaheadScanner start = scanner.at(scanner.position());
+        lazyBodies = true;
+        reportErrors = false;
+        JCompilationUnit compilationUnit = parseCompilationUnit();
+        if (!isInError && !Session.current().parse(lazyBlocks)) {
+            return compilationUnit;
+        }
+
+        // There is an error: parse the unit again, in order, so the errors
+        // are reported (and recovered from) just as they are found
+        scanner = start;
+        scanner.next();
+        lazyBodies = false;
+        reportErrors = true;
+        isInError = false;
+        isRecovered = true;
+        return parseCompilationUnit();
+    }
+
+    /**
+     * Parse a compilation unit on the current thread; the bodies are skipped
+     * over in lazy parsing.
+     * 
+     * @return an AST for a compilationUnit.
+     */
+
+    private JCompilationUnit parseCompilationUnit() {
+        int line = scanner.line();
         TypeName packageName = null; // Default
         if (have(PACKAGE)) {
             packageName = qualifiedIdentifier();
@@ -380,12 +630,12 @@ public class Parser {
      */
 
     private TypeName qualifiedIdentifier() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(IDENTIFIER);
-        String qualifiedIdentifier = scanner.previousToken().image();
+        String qualifiedIdentifier = scanner.previousImage();
         while (have(DOT)) {
             mustBe(IDENTIFIER);
-            qualifiedIdentifier += "." + scanner.previousToken().image();
+            qualifiedIdentifier += "." + scanner.previousImage();
         }
         return new TypeName(line, qualifiedIdentifier);
     }
@@ -491,10 +741,10 @@ public class Parser {
      */
 
     private JClassDeclaration classDeclaration(ArrayList<String> mods) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(CLASS);
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         Type superClass;
 	ArrayList<Type> classList = new ArrayList<Type>();
         if (have(EXTENDS)) {
@@ -553,14 +803,14 @@ public class Parser {
      */
 
     private JMember memberDecl(ArrayList<String> mods) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JMember memberDecl = null;
         if (seeIdentLParen()) {
             // A constructor
             mustBe(IDENTIFIER);
-            String name = scanner.previousToken().image();
+            String name = scanner.previousImage();
             ArrayList<JFormalParameter> params = formalParameters();
-            JBlock body = block();
+            JBlock body = body();
             memberDecl = new JConstructorDeclaration(line, mods, name, params,
                     body);
         } else {
@@ -569,9 +819,9 @@ public class Parser {
                 // void method
                 type = Type.VOID;
                 mustBe(IDENTIFIER);
-                String name = scanner.previousToken().image();
+                String name = scanner.previousImage();
                 ArrayList<JFormalParameter> params = formalParameters();
-                JBlock body = have(SEMI) ? null : block();
+                JBlock body = have(SEMI) ? null : body();
                 memberDecl = new JMethodDeclaration(line, mods, name, type,
                         params, body);
             } else {
@@ -579,9 +829,9 @@ public class Parser {
                 if (seeIdentLParen()) {
                     // Non void method
                     mustBe(IDENTIFIER);
-                    String name = scanner.previousToken().image();
+                    String name = scanner.previousImage();
                     ArrayList<JFormalParameter> params = formalParameters();
-                    JBlock body = have(SEMI) ? null : block();
+                    JBlock body = have(SEMI) ? null : body();
                     memberDecl = new JMethodDeclaration(line, mods, name, type,
                             params, body);
                 } else {
@@ -595,6 +845,57 @@ public class Parser {
         return memberDecl;
     }
 
+    /**
+     * Parse a method or constructor body. If bodies are parsed lazily, the
+     * tokens of the body are just skipped over (matching curly braces), and
+     * a {@link JLazyBlock} recording where it starts is returned; a body
+     * running to the end of the input is parsed at once, so the error is
+     * reported in place.
+     * 
+     * <pre>
+     *   body ::= block
+     * </pre>
+     * 
+     * @return an AST for a body.
+     */
+
+    private JBlock body() {
+        if (!lazyBodies || !see(LCURLY)) {
+            return block();
+        }
+        int line = scanner.line();
+        int start = scanner.position();
+        TokenArray tokens = scanner.tokens();
+        int end = start;
+        for (int depth = 0; end < tokens.size(); end++) {
+            if (tokens.kind(end) == LCURLY) {
+                depth++;
+            } else if (tokens.kind(end) == RCURLY && --depth == 0) {
+                break;
+            }
+        }
+        if (end == tokens.size()) {
+            return block();
+        }
+        for (int i = start; i <= end; i++) {
+            scanner.next();
+        }
+        JLazyBlock lazyBlock = new JLazyBlock(line, scanner, start);
+        lazyBlocks.add(lazyBlock);
+        return lazyBlock;
+    }
+
+    /**
+     * Parse a body that was skipped over in lazy parsing, the scanner having
+     * been positioned at its start.
+     * 
+     * @return an AST for the body.
+     */
+
+    public JBlock lazyBody() {
+        return block();
+    }
+
     /**
      * Parse a block.
      * 
@@ -606,7 +907,7 @@ public class Parser {
      */
 
     private JBlock block() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         ArrayList<JStatement> statements = new ArrayList<JStatement>();
         mustBe(LCURLY);
         while (!see(RCURLY) && !see(EOF)) {
@@ -653,7 +954,7 @@ public class Parser {
      */
 
     private JStatement statement() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (see(LCURLY)) {
             return block();
         } else if (have(IF)) {
@@ -739,7 +1040,7 @@ public class Parser {
 	    }
 	    else {
 		mustBe(IDENTIFIER);
-		String id = scanner.previousToken().image();
+		String id = scanner.previousImage();
 		mustBe(SEMI);
 		return new JBreakStatement(line,id);
 		}
@@ -791,10 +1092,10 @@ public class Parser {
      */
 
     private JFormalParameter formalParameter() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type = type();
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         return new JFormalParameter(line, name, type);
     }
 
@@ -818,7 +1119,7 @@ public class Parser {
     //forInit ::= statementExpression {, statementExpression}
     //| [final] type variableDeclarators
     private JForInit forInit (){
-        int line = scanner.token().line();
+        int line = scanner.line();
 	 ArrayList<JStatement> forInits = new ArrayList<JStatement>();
 	
 	 if (seeBasicType()){
@@ -861,7 +1162,7 @@ public class Parser {
      */
 
 private JStatement switchBlockStatementGroup() {
-	int line = scanner.token().line();
+	int line = scanner.line();
         ArrayList<JExpression>switchLabels =  new ArrayList<JExpression>();
 	ArrayList<JStatement> blockStatements = new ArrayList<JStatement>();
 
@@ -903,7 +1204,7 @@ private JStatement switchBlockStatementGroup() {
      */
 
 private JExpression switchLabel(){
-    int line = scanner.token().line();
+    int line = scanner.line();
     if(have(CASE)){
 	JExpression expr = expression();
 	mustBe(COL);
@@ -933,7 +1234,7 @@ private JExpression switchLabel(){
     //localVariableDeclarationStatement ::= [final] type variableDeclarators ;
 
     private JVariableDeclaration localVariableDeclarationStatement() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         ArrayList<String> mods = new ArrayList<String>();
         ArrayList<JVariableDeclarator> vdecls = variableDeclarators(type());
         mustBe(SEMI);
@@ -976,9 +1277,9 @@ private JExpression switchLabel(){
      */
 
     private JVariableDeclarator variableDeclarator(Type type) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         mustBe(IDENTIFIER);
-        String name = scanner.previousToken().image();
+        String name = scanner.previousImage();
         JExpression initial = have(ASSIGN) ? variableInitializer(type) : null;
         return new JVariableDeclarator(line, name, type, initial);
     }
@@ -1019,7 +1320,7 @@ private JExpression switchLabel(){
      */
 
     private JArrayInitializer arrayInitializer(Type type) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         ArrayList<JExpression> initials = new ArrayList<JExpression>();
         mustBe(LCURLY);
         if (have(RCURLY)) {
@@ -1099,8 +1400,7 @@ private JExpression switchLabel(){
 		}
 
 	else {
-            reportParserError("Type sought where %s found", scanner.token()
-                    .image());
+            reportParserError("Type sought where %s found", scanner.image());
             return Type.ANY;
         }
     }
@@ -1146,7 +1446,7 @@ private JExpression switchLabel(){
      */
 
     private JStatement statementExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression expr = expression();
         if (expr instanceof JAssignment || expr instanceof JPreIncrementOp
 	                                || expr instanceof JPostIncrementOp
@@ -1196,7 +1496,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression assignmentExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression lhs = conditionalExpression();
 
         if (have(ASSIGN)) {
@@ -1253,7 +1553,7 @@ private JExpression switchLabel(){
      * @return an AST for a conditionalExpression.
      */
     private JExpression conditionalExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression lhs = conditionalOrExpression();
 	if (have(SEL)){
 	    JExpression  mhs= assignmentExpression(); 
@@ -1268,283 +1568,134 @@ private JExpression switchLabel(){
 
 
     /**
-     * Parse a conditional-or expression.
+     * Parse a conditional-or expression: a binary expression, by precedence
+     * climbing.
      * 
      * <pre>
      *   conditionalOrExpression ::= conditionalAndExpression // level 11
      *                                  {LOR conditionalAndExpression}
-     * </pre>
-     * 
-     * @return an AST for a conditionalExpression.
-     */
-
-    private JExpression conditionalOrExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = conditionalAndExpression();
-        while (more) {
-            if (have(LOR)) {
-                lhs = new JLogicalOrOp(line, lhs, conditionalAndExpression());
-            } else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-    /**
-     * Parse a conditional-and expression.
-     * 
-     * <pre>
-     *   conditionalAndExpression ::= equalityExpression // level 10
-     *                                  {LAND equalityExpression}
-     * </pre>
-     * 
-     * @return an AST for a conditionalExpression.
-     */
-
-    private JExpression conditionalAndExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = inclusiveOrExpression();
-        while (more) {
-            if (have(LAND)) {
-                lhs = new JLogicalAndOp(line, lhs, inclusiveOrExpression());
-            } else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-     /**
-     * Parse a inclusiveOr Expression
-     * 
-     * <pre>
-     *   inclusiveOrExpression ::= exclusiveOrExpression
-		      	  {| exclusiveOrExpression} //level 9
-     * </pre>
-     * 
-     * @return an AST for a inclusiveOr Expression.
-     */
-
-    private JExpression  inclusiveOrExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = exclusiveOrExpression();
-        while (more) {
-            if (have(OR)) {
-                lhs = new JBitOrOp(line, lhs, exclusiveOrExpression());
-            } else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-     /**
-     * Parse a exclusiveOr Expression
-     * 
-     * <pre>
-     *   exclusiveOrExpression ::= andExpression
-		      	  {| andExpression} //level 8
-     * </pre>
-     * 
-     * @return an AST for a exclusiveOr Expression.
-     */
-
-    private JExpression  exclusiveOrExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = andExpression();
-        while (more) {
-            if (have(XOR)) {
-                lhs = new JBitXOrOp(line, lhs, andExpression());
-            } else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-
-     /**
-     * Parse a and Expression
-     * 
-     * <pre>
-     *   andExpression ::= equalityExpression
-		      	  {| euqalityExpression} //level 7
-     * </pre>
-     * 
-     * @return an AST for a and Expression.
-     */
-
-    private JExpression  andExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = equalityExpression();
-        while (more) {
-            if (have(AND)) {
-                lhs = new JBitAndOp(line, lhs, equalityExpression());
-            } else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-    
-    /**
-     * Parse an equality expression.
-     * 
-     * <pre>
+     *   conditionalAndExpression ::= inclusiveOrExpression // level 10
+     *                                  {LAND inclusiveOrExpression}
+     *   inclusiveOrExpression ::= exclusiveOrExpression // level 9
+     *                                  {OR exclusiveOrExpression}
+     *   exclusiveOrExpression ::= andExpression // level 8
+     *                                  {XOR andExpression}
+     *   andExpression ::= equalityExpression // level 7
+     *                                  {AND equalityExpression}
      *   equalityExpression ::= relationalExpression  // level 6
-     *                            {EQUAL relationalExpression}
-     * </pre>
-     * 
-     * @return an AST for an equalityExpression.
-     */
-
-    private JExpression equalityExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = relationalExpression();
-        while (more) {
-            if (have(EQUAL)) {
-                lhs = new JEqualOp(line, lhs, relationalExpression());
-            }
-	    else if (have(NEQUAL)){
-		lhs = new JNEqualOp(line, lhs,relationalExpression());
-	    }
-	    else {
-                more = false;
-            }
-        }
-        return lhs;
-    }
-
-    /**
-     * Parse a relational expression.
-     * 
-     * <pre>
+     *                            {(EQUAL | NEQUAL) relationalExpression}
      *   relationalExpression ::= shiftExpression  // level 5
-     *                              [(GT | LE ) shiftExpression 
+     *                              [(GT | LS | GE | LE) shiftExpression 
      *                              | INSTANCEOF referenceType]
+     *   shiftExpression ::= additiveExpression // level 4
+     *                         {(ALS | ARS | LRS) additiveExpression}
+     *   additiveExpression ::= multiplicativeExpression // level 3
+     *                            {(PLUS | MINUS) multiplicativeExpression}
+     *   multiplicativeExpression ::= unaryExpression  // level 2
+     *                                  {(STAR | DIV | REM) unaryExpression}
      * </pre>
      * 
-     * @return an AST for a relationalExpression.
+     * @return an AST for a conditionalOrExpression.
      */
 
-    private JExpression relationalExpression() {
-        int line = scanner.token().line();
-        JExpression lhs = shiftExpression();
-        if (have(GT)) {//>
-            return new JGreaterThanOp(line, lhs, shiftExpression());
-        } else if (have (LS)) {//<
-	    return new JLessThanOp(line, lhs, shiftExpression());
-	}
-	else if (have (GE)){//>=
-	    return new JGreaterEqualOp(line, lhs, shiftExpression());
-	}
-	else if (have(LE)) {//<=
-            return new JLessEqualOp(line, lhs, shiftExpression());
-        } else if (have(INSTANCEOF)) {
-            return new JInstanceOfOp(line, lhs, referenceType());
-        } else {
-            return lhs;
-        }
+    private JExpression conditionalOrExpression() {
+        return binaryExpression(1);
     }
 
-     /**
-     * Parse a shift expression.
-     * 
-     * <pre>
-     *  shiftExpression ::= additiveExpression //level 4
-     *			{(ALS | ARS | LRS) additiveExpression}
-     * </pre>
-     * 
-     * @return an AST for a bitShiftExpression
-     */
-
-    private JExpression shiftExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = additiveExpression();
-        while (more) {
-            if (have(ALS)) {
-                lhs = new JArithLeftShiftOp(line, lhs, additiveExpression());
-            } else if (have(ARS)){
-                lhs = new JArithRightShiftOp(line, lhs,additiveExpression());
-            } else if (have (LRS)){
-		lhs = new JLogicRightShiftOp(line, lhs, additiveExpression());
-	    }
-	    else{
-		more = false;
-	    }
-        }
-        return lhs;
-    }    
-    
     /**
-     * Parse an additive expression.
-     * 
-     * <pre>
-     *   additiveExpression ::= multiplicativeExpression // level 3
-     *                            {(PLUS | MINUS) multiplicativeExpression}
-     * </pre>
-     * 
-     * @return an AST for an additiveExpression.
+     * Parse a binary expression whose operators all have at least the
+     * specified precedence (see {@link #PRECEDENCE}), by precedence
+     * climbing: rather than descending through a method for each level of
+     * the grammar, the operands of an operator are parsed as binary
+     * expressions whose operators have a higher precedence than it. The
+     * operators of a level associate to the left, but for the relational
+     * operators, of which there may be only one.
+     * 
+     * @param minPrecedence
+     *            the least precedence of the operators.
+     * @return an AST for the binary expression.
      */
 
-    private JExpression additiveExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = multiplicativeExpression();
-        while (more) {
-            if (have(MINUS)) {
-                lhs = new JSubtractOp(line, lhs, multiplicativeExpression());
-            } else if (have(PLUS)) {
-                lhs = new JPlusOp(line, lhs, multiplicativeExpression());
+    private JExpression binaryExpression(int minPrecedence) {
+        int line = scanner.line();
+        JExpression lhs = unaryExpression();
+        int maxPrecedence = Integer.MAX_VALUE;
+        while (true) {
+            TokenKind operator = scanner.kind();
+            int precedence = PRECEDENCE[operator.ordinal()];
+            if (precedence < minPrecedence || precedence > maxPrecedence) {
+                return lhs;
+            }
+            scanner.next();
+            if (operator == INSTANCEOF) {
+                lhs = new JInstanceOfOp(line, lhs, referenceType());
             } else {
-                more = false;
+                lhs = binaryOp(line, operator, lhs,
+                        binaryExpression(precedence + 1));
             }
+            maxPrecedence = precedence == RELATIONAL ? precedence - 1
+                    : precedence;
         }
-        return lhs;
     }
 
     /**
-     * Parse a multiplicative expression.
-     * 
-     * <pre>
-     *   multiplicativeExpression ::= unaryExpression  // level 2
-     *                                  {STAR unaryExpression}
-     * </pre>
+     * Returns the AST for the specified binary operation.
      * 
-     * @return an AST for a multiplicativeExpression.
+     * @param line
+     *            line in which the operation occurs.
+     * @param operator
+     *            the operator.
+     * @param lhs
+     *            the lhs operand.
+     * @param rhs
+     *            the rhs operand.
+     * @return an AST for the binary operation.
      */
 
-    private JExpression
-	multiplicativeExpression() {
-        int line = scanner.token().line();
-        boolean more = true;
-        JExpression lhs = unaryExpression();
-        while (more) {
-            if (have(STAR)) {
-                lhs = new JMultiplyOp(line, lhs, unaryExpression());
-            } else if (have(DIV)){
-                lhs = new JDivideOp(line, lhs,unaryExpression());
-            } else if (have (REM)){
-		lhs = new JRemainderOp(line, lhs, unaryExpression());
-	    }
-
-	    else{
-		more = false;
-	    }
+    private JExpression binaryOp(int line, TokenKind operator,
+            JExpression lhs, JExpression rhs) {
+        switch (operator) {
+        case LOR:
+            return new JLogicalOrOp(line, lhs, rhs);
+        case LAND:
+            return new JLogicalAndOp(line, lhs, rhs);
+        case OR:
+            return new JBitOrOp(line, lhs, rhs);
+        case XOR:
+            return new JBitXOrOp(line, lhs, rhs);
+        case AND:
+            return new JBitAndOp(line, lhs, rhs);
+        case EQUAL:
+            return new JEqualOp(line, lhs, rhs);
+        case NEQUAL:
+            return new JNEqualOp(line, lhs, rhs);
+        case GT:
+            return new JGreaterThanOp(line, lhs, rhs);
+        case LS:
+            return new JLessThanOp(line, lhs, rhs);
+        case GE:
+            return new JGreaterEqualOp(line, lhs, rhs);
+        case LE:
+            return new JLessEqualOp(line, lhs, rhs);
+        case ALS:
+            return new JArithLeftShiftOp(line, lhs, rhs);
+        case ARS:
+            return new JArithRightShiftOp(line, lhs, rhs);
+        case LRS:
+            return new JLogicRightShiftOp(line, lhs, rhs);
+        case MINUS:
+            return new JSubtractOp(line, lhs, rhs);
+        case PLUS:
+            return new JPlusOp(line, lhs, rhs);
+        case STAR:
+            return new JMultiplyOp(line, lhs, rhs);
+        case DIV:
+            return new JDivideOp(line, lhs, rhs);
+        default:
+            return new JRemainderOp(line, lhs, rhs);
         }
-        return lhs;
     }
 
-
-
     /**
      * Parse an unary expression.
      * 
@@ -1558,7 +1709,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression unaryExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(INC)) {
             return new JPreIncrementOp(line, unaryExpression());//pre ++ 
         } else if (have(MINUS)) {
@@ -1591,7 +1742,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression simpleUnaryExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(LNOT)) {
             return new JLogicalNotOp(line, unaryExpression());
         }
@@ -1622,7 +1773,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression postfixExpression() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         JExpression primaryExpr = primary();
         while (see(DOT) || see(LBRACK)) {
             primaryExpr = selector(primaryExpr);
@@ -1653,11 +1804,11 @@ private JExpression switchLabel(){
      */
 
     private JExpression selector(JExpression target) {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(DOT)) {
             // Target . selector
             mustBe(IDENTIFIER);
-            String name = scanner.previousToken().image();
+            String name = scanner.previousImage();
             if (see(LPAREN)) {
                 ArrayList<JExpression> args = arguments();
                 return new JMessageExpression(line, target, name, args);
@@ -1690,7 +1841,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression primary() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (see(LPAREN)) {
             return parExpression();
         } else if (have(THIS)) {
@@ -1704,7 +1855,7 @@ private JExpression switchLabel(){
                 return new JSuperConstruction(line, arguments());
             } else {
                 mustBe(IDENTIFIER);
-                String name = scanner.previousToken().image();
+                String name = scanner.previousImage();
                 JExpression newTarget = new JSuper(line);
                 if (see(LPAREN)) {
                     return new JMessageExpression(line, newTarget, null, name,
@@ -1749,7 +1900,7 @@ private JExpression switchLabel(){
      */
 
     private JExpression creator() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         Type type = seeBasicType() ? basicType() : qualifiedIdentifier();
         if (see(LPAREN)) {
             ArrayList<JExpression> args = arguments();
@@ -1765,8 +1916,7 @@ private JExpression switchLabel(){
             } else
                 return newArrayDeclarator(line, type);
         } else {
-            reportParserError("( or [ sought where %s found", scanner.token()
-                    .image());
+            reportParserError("( or [ sought where %s found", scanner.image());
             return new JWildExpression(line);
         }
     }
@@ -1823,18 +1973,18 @@ private JExpression switchLabel(){
      */
 
     private JExpression literal() {
-        int line = scanner.token().line();
+        int line = scanner.line();
         if (have(INT_LITERAL)) {
-            return new JLiteralInt(line, scanner.previousToken().image());
+            return new JLiteralInt(line, scanner.previousImage());
         } else if (have(LONG_LITERAL)){
-	    return new JLiteralLong(line, scanner.previousToken().image());
+	    return new JLiteralLong(line, scanner.previousImage());
 	} else if (have (DOUBLE_LITERAL)){
-	    return new JLiteralDouble(line, scanner.previousToken().image());
+	    return new JLiteralDouble(line, scanner.previousImage());
 	}
 	  else if (have(CHAR_LITERAL)) {
-            return new JLiteralChar(line, scanner.previousToken().image());
+            return new JLiteralChar(line, scanner.previousImage());
         } else if (have(STRING_LITERAL)) {
-            return new JLiteralString(line, scanner.previousToken().image());
+            return new JLiteralString(line, scanner.previousImage());
         } else if (have(TRUE)) {
             return new JLiteralTrue(line);
         } else if (have(FALSE)) {
@@ -1842,8 +1992,7 @@ private JExpression switchLabel(){
         } else if (have(NULL)) {
             return new JLiteralNull(line);
         } else {
-            reportParserError("Literal sought where %s found", scanner.token()
-                    .image());
+            reportParserError("Literal sought where %s found", scanner.image());
             return new JWildExpression(line);
         }
     }
@@ -1854,7 +2003,7 @@ private JExpression switchLabel(){
     // private void trace( String message )
     // {
     // System.err.println( "["
-    // + scanner.token().line()
+    // + scanner.line()
     // + ": "
     // + message
     // + ", looking at a: "
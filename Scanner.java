@@ -2,12 +2,13 @@
 
 package jminusminus;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.Reader;
 
-import java.util.Hashtable;
+import java.util.Arrays;
 
 import static jminusminus.TokenKind.*;
 
@@ -28,8 +29,29 @@ class Scanner {
     /** End of file character. */
     public final static char EOFCH = CharReader.EOFCH;
 
-    /** Keywords in j--. */
-    private Hashtable<String, TokenKind> reserved;
+    /** Length of the longest keyword. */
+    private static final int MAX_KEYWORD_LENGTH = 16;
+
+    /**
+     * Keywords in j--, by length and first letter: those of length n starting
+     * with c are {@code keywords[n][c - 'a']}. Each is a TokenKind whose image
+     * is a (non-empty) lower-case word.
+     */
+    private static final TokenKind[][][] keywords = 
+        new TokenKind[MAX_KEYWORD_LENGTH + 1]['z' - 'a' + 1][0];
+
+    static {
+        for (TokenKind kind : TokenKind.values()) {
+            String image = kind.image();
+            if (image.matches("[a-z]+")) {
+                TokenKind[] candidates = keywords[image.length()][image
+                        .charAt(0) - 'a'];
+                candidates = Arrays.copyOf(candidates, candidates.length + 1);
+                candidates[candidates.length - 1] = kind;
+                keywords[image.length()][image.charAt(0) - 'a'] = candidates;
+            }
+        }
+    }
 
     /** Source characters. */
     private CharReader input;
@@ -46,6 +68,18 @@ class Scanner {
     /** Line number of current token. */
     private int line;
 
+    /**
+     * Offset in the source buffer of the current token's characters (from
+     * which the image of an identifier or number is taken).
+     */
+    private int tokenStart;
+
+    /**
+     * Image of the current token, if it is not made up of its characters or
+     * given by its kind; {@code null} otherwise.
+     */
+    private String tokenImage;
+
     /**
      * Constructs a Scanner object.
      * 
@@ -56,68 +90,58 @@ class Scanner {
      */
 
     public Scanner(String fileName) throws FileNotFoundException {
-        this.input = new CharReader(fileName);
+        this(fileName, new FileReader(fileName));
+    }
+
+    /**
+     * Constructs a Scanner for the source read from the specified reader.
+     * 
+     * @param fileName
+     *            the name of the source, for reporting errors.
+     * @param reader
+     *            reader from which the source is read.
+     */
+
+    public Scanner(String fileName, Reader reader) {
+        this.input = new CharReader(fileName, reader);
         this.fileName = fileName;
         isInError = false;
 
-        // Keywords in j--
-        reserved = new Hashtable<String, TokenKind>();
-        reserved.put(ABSTRACT.image(), ABSTRACT);
-        reserved.put(BOOLEAN.image(), BOOLEAN);
-        reserved.put(CHAR.image(), CHAR);
-        reserved.put(CLASS.image(), CLASS);
-        reserved.put(ELSE.image(), ELSE);
-        reserved.put(EXTENDS.image(), EXTENDS);
-        reserved.put(FALSE.image(), FALSE);
-        reserved.put(IF.image(), IF);
-        reserved.put(IMPORT.image(), IMPORT);
-        reserved.put(INSTANCEOF.image(), INSTANCEOF);
-        reserved.put(INT.image(), INT);
-        reserved.put(NEW.image(), NEW);
-        reserved.put(NULL.image(), NULL);
-        reserved.put(PACKAGE.image(), PACKAGE);
-        reserved.put(PRIVATE.image(), PRIVATE);
-        reserved.put(PROTECTED.image(), PROTECTED);
-        reserved.put(PUBLIC.image(), PUBLIC);
-        reserved.put(RETURN.image(), RETURN);
-        reserved.put(STATIC.image(), STATIC);
-        reserved.put(SUPER.image(), SUPER);
-        reserved.put(THIS.image(), THIS);
-        reserved.put(TRUE.image(), TRUE);
-        reserved.put(VOID.image(), VOID);
-        reserved.put(WHILE.image(), WHILE);
-	reserved.put(BREAK.image(), BREAK);
-	reserved.put(CASE.image(), CASE);
-        reserved.put(CATCH.image(), CATCH);
-        reserved.put(CONTINUE.image(), CONTINUE);
-        reserved.put(DEF.image(), DEF);
-        reserved.put(DO.image(), DO);
-        reserved.put(DOUBLE.image(), DOUBLE);
-        reserved.put(FINAL.image(), FINAL);
-	reserved.put(FINALLY.image(),FINALLY);
-        reserved.put(FOR.image(), FOR);
-        reserved.put(IMPLEMENTS.image(), IMPLEMENTS);
-        reserved.put(INTERFACE.image(), INTERFACE);
-        reserved.put(LONG.image(), LONG);
-	reserved.put(SWITCH.image(), SWITCH);
-	reserved.put(THROW.image(), THROW);
-        reserved.put(THROWS.image(),THROWS);
-	reserved.put(TRY.image(), TRY);
-	
-
         // Prime the pump.
         nextCh();
     }
 
     /**
-     * Scans the next token from input.
+     * Scans the whole of the input, in one pass, into an array of tokens
+     * ending with EOF.
+     * 
+     * @return the tokens.
+     */
+
+    public TokenArray scanAll() {
+        // Expect a token for every few characters
+        TokenArray tokens = new TokenArray(input.buffer(), input.buffer().length
+                / 4);
+        TokenKind kind;
+        do {
+            kind = scan();
+            tokens.add(kind, tokenStart, input.offset() - tokenStart, line,
+                    tokenImage);
+        } while (kind != EOF);
+        return tokens;
+    }
+
+    /**
+     * Scans the next token from input. Its characters are those in the
+     * source buffer from {@code tokenStart} up to the current character,
+     * and its image is {@code tokenImage} if that is set.
      * 
-     * @return the next scanned token.
+     * @return the kind of the next scanned token.
      */
 
-    public TokenInfo getNextToken() {
+    private TokenKind scan() {
         StringBuffer buffer;
-	buffer = new StringBuffer();//for backward char check
+        tokenImage = null;
 	char lastCh; //hold char before operator
         boolean moreWhiteSpace = true;
 	boolean isMultiComment = false;
@@ -126,6 +150,7 @@ class Scanner {
                 nextCh();
             }
             if (ch == '/') {
+                tokenStart = input.offset();
                 nextCh();
                 if (ch == '/') {
                     // CharReader maps all new lines to '\n'
@@ -151,10 +176,10 @@ class Scanner {
 			}}
 	        else if (ch == '='){
 		    nextCh();
-		    return new TokenInfo(DIV_ASSIGN, line);
+		    return DIV_ASSIGN;
 		}
 		else {
-                    return new TokenInfo(DIV, line);
+                    return DIV;
                 }
 		    }
 		
@@ -165,115 +190,116 @@ class Scanner {
             }
         
         line = input.line();
+        tokenStart = input.offset();
         switch (ch) {
 
 	    //Separators
         case '(':
             nextCh();
-            return new TokenInfo(LPAREN, line);
+            return LPAREN;
         case ')':
             nextCh();
-            return new TokenInfo(RPAREN, line);
+            return RPAREN;
         case '{':
             nextCh();
-            return new TokenInfo(LCURLY, line);
+            return LCURLY;
         case '}':
             nextCh();
-            return new TokenInfo(RCURLY, line);
+            return RCURLY;
         case '[':
             nextCh();
-            return new TokenInfo(LBRACK, line);
+            return LBRACK;
         case ']':
             nextCh();
-            return new TokenInfo(RBRACK, line);
+            return RBRACK;
         case ';':
             nextCh();
-            return new TokenInfo(SEMI, line);
+            return SEMI;
         case ',':
             nextCh();
-            return new TokenInfo(COMMA, line);
+            return COMMA;
 	case ':':
 	    nextCh();
-	    return new TokenInfo(COL, line);
+	    return COL;
         case '=':
             nextCh();
             if (ch == '=') {
                 nextCh();
-                return new TokenInfo(EQUAL, line);
+                return EQUAL;
             } else {
-                return new TokenInfo(ASSIGN, line);
+                return ASSIGN;
             }
 	case '?':
 	    nextCh();
-	    return new TokenInfo(SEL, line);
+	    return SEL;
         case '!':
             nextCh();
 	    if (ch == '='){
 		nextCh();
-		return new TokenInfo(NEQUAL, line);
+		return NEQUAL;
 	    }
 	    else  {
-		return new TokenInfo(LNOT, line);
+		return LNOT;
 	    }
 	    
         case '*':
             nextCh();
 	    if (ch == '='){
 		nextCh();
-		return new TokenInfo(STAR_ASSIGN, line);
+		return STAR_ASSIGN;
 	    }else {
-            return new TokenInfo(STAR, line);
+            return STAR;
 	    }
 	case '%':
 	    nextCh();
 	    if (ch == '='){
 		nextCh();
-		return new TokenInfo(MODE_ASSIGN, line);
+		return MODE_ASSIGN;
 	    }
 	    else {
-	    return new TokenInfo(REM, line);
+	    return REM;
 	    }
         case '+': 
             nextCh();
             if (ch == '=') {
                 nextCh();
-                return new TokenInfo(PLUS_ASSIGN, line);
+                return PLUS_ASSIGN;
             } else if (ch == '+') {
                 nextCh();
-                return new TokenInfo(INC, line);
+                return INC;
             } else {
 		//get char before 
 		//	lastCh = buffer.charAt(buffer.length()-1);
 		//if (isDigit(lastCh) || isIdentifierPart(lastCh))//TODO: not recognized 
-		    return new TokenInfo(PLUS, line);
+		    return PLUS;
 		    //	else
-		    // return new TokenInfo(UPLUS, line);
+		    // return UPLUS;
             }
         case '-':
             nextCh();
             if (ch == '-') {
                 nextCh();
-                return new TokenInfo(DEC, line);
+                return DEC;
             }else if (ch == '='){
 	        nextCh();
-                return new TokenInfo(DEC_ASSIGN, line);
+                return DEC_ASSIGN;
 	    }
 	    else {
-                return new TokenInfo(MINUS, line);
+                return MINUS;
             }
         case '&':
             nextCh();
             if (ch == '&') {
                 nextCh();
-                return new TokenInfo(LAND, line);
+                return LAND;
             }else if (ch == '='){
 		nextCh();
-		return new TokenInfo(AND_ASSIGN,line);
+		return AND_ASSIGN;
 	    }
 	    else {
 		// reportScannerError("Operator & is not supported in j--.");
                 //return getNextToken();
-		return new TokenInfo(AND, line);
+		return AND;
             }
         case '>':
             nextCh();
@@ -283,76 +309,76 @@ class Scanner {
 		    nextCh();
 		    if (ch == '='){
 			nextCh();
-			return new TokenInfo(RRSHIFT_ASSIGN, line);
+			return RRSHIFT_ASSIGN;
 		    }
 		    else{
 			nextCh();
-		    return new TokenInfo(LRS, line);
+		    return LRS;
 		    }
 		}
 		else if (ch == '='){
 		    nextCh();
-		    return new TokenInfo(RSHIFT_ASSIGN, line);
+		    return RSHIFT_ASSIGN;
 		}
 		else {
 		    nextCh();
-		    return new TokenInfo(ARS, line);
+		    return ARS;
 		}
 	    }
 	    else if (ch == '='){
 		nextCh();
-		return new TokenInfo(GE, line);
+		return GE;
 	    }
 	    else {
-		return new TokenInfo(GT, line);
+		return GT;
 	    }
         case '<':
             nextCh();
             if (ch == '=') {
                 nextCh();
-                return new TokenInfo(LE, line);
+                return LE;
             } else if (ch == '<'){
 		nextCh();
 		if(ch == '='){
 		    nextCh();
-		    return new TokenInfo(LSHIFT_ASSIGN, line);
+		    return LSHIFT_ASSIGN;
 		}
 		else{
 		    nextCh();
-		    return new TokenInfo(ALS, line);
+		    return ALS;
 		}
 	    }
 	    else {
-		return new TokenInfo(LS,line);
+		return LS;
 		// reportScannerError("Operator < is not supported in j--.");
                 //return getNextToken();
             }
 
 	case '~':
 	    nextCh();
-	    return new TokenInfo(UCOMPLE, line);
+	    return UCOMPLE;
 
         case '|':
 	    nextCh();
 	    if (ch == '|'){
 		nextCh();
-		return new TokenInfo(LOR, line);
+		return LOR;
 	    }else if (ch == '='){
 		nextCh();
-		return new TokenInfo(OR_ASSIGN, line);
+		return OR_ASSIGN;
 	    }
 	    else{
-	    return new TokenInfo(OR, line);
+	    return OR;
 	    }
 
 	case '^':
 	    nextCh();
 	    if (ch == '=' ){
 		nextCh();
-		return new TokenInfo(XOR_ASSIGN, line);
+		return XOR_ASSIGN;
 	    }
 	    else{
-	    return new TokenInfo(XOR, line);
+	    return XOR;
 	    }
 	    
         case '\'':
@@ -369,7 +395,7 @@ class Scanner {
             if (ch == '\'') {
                 buffer.append('\'');
                 nextCh();
-                return new TokenInfo(CHAR_LITERAL, buffer.toString(), line);
+                return image(CHAR_LITERAL, buffer.toString());
             } else {
                 // Expected a ' ; report error and try to
                 // recover.
@@ -378,7 +404,7 @@ class Scanner {
                 while (ch != '\'' && ch != ';' && ch != '\n') {
                     nextCh();
                 }
-                return new TokenInfo(CHAR_LITERAL, buffer.toString(), line);
+                return image(CHAR_LITERAL, buffer.toString());
             }
         case '"':
             buffer = new StringBuffer();
@@ -402,7 +428,7 @@ class Scanner {
                 nextCh();
                 buffer.append("\"");
             }
-            return new TokenInfo(STRING_LITERAL, buffer.toString(), line);
+            return image(STRING_LITERAL, buffer.toString());
         case '.': 
 	    nextCh();
 	    //scan double starting with .
@@ -416,14 +442,14 @@ class Scanner {
 		if (ch == 'D' || ch == 'd'){
 		    buffer.append(ch);
 		    nextCh();
-		    return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+		    return image(DOUBLE_LITERAL, buffer.toString());
 		}
 	    }
 	    else{//scan dot		
-		return new TokenInfo(DOT, line);
+		return DOT;
 	    }
         case EOFCH:
-            return new TokenInfo(EOF, line);
+            return EOF;
         case '0':
             // Handle only simple decimal integers for now.
             nextCh();
@@ -440,7 +466,7 @@ class Scanner {
 		    if (ch == 'D' || ch == 'd'){
 			buffer.append(ch);
 			nextCh();
-			return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+			return image(DOUBLE_LITERAL, buffer.toString());
 
 		   }
 		}
@@ -449,11 +475,11 @@ class Scanner {
 		buffer.append("0");
 		buffer.append(ch);
 		nextCh();
-	      	return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+	      	return image(DOUBLE_LITERAL, buffer.toString());
 
 	    }
 	    else{ // integner 0
-		return new TokenInfo(INT_LITERAL, "0", line);
+		return image(INT_LITERAL, "0");
 	    }
      
 	        
@@ -466,68 +492,105 @@ class Scanner {
         case '7':
         case '8':
         case '9':
-            buffer = new StringBuffer();
+            // The literal is the characters scanned, so its token refers
+            // to them in the source buffer
+            tokenStart = input.offset();
             while (isDigit(ch)) {
-                buffer.append(ch);
                 nextCh();
             }
 	    
 	    if (ch == 'l' || ch == 'L'){//scan long
-		buffer.append(ch);
 		nextCh();
-		return new TokenInfo(LONG_LITERAL, buffer.toString(), line);
+		return LONG_LITERAL;
 	    }
 	    else if (ch == '.' ){//scan double with . in middle and e + -
-		buffer.append(ch);
 		nextCh();
 		while (isDigit(ch) || ch == 'e' || ch == '+' || ch == '-') {
-		    buffer.append(ch);
 		    nextCh();
 		}
 		if (ch =='d' || ch == 'D'){
-		    buffer.append(ch);
 		    nextCh();
 		}
-		return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+		return DOUBLE_LITERAL;
 	    }
 	    else if (ch == 'e'){//scan double with e in middle, no dot
-		buffer.append(ch);
 		nextCh();
 		while(isDigit(ch) ||  ch == '+' || ch == '-'){
-		buffer.append(ch);
 		nextCh();
 		
 	    }
 		if (ch =='d' || ch == 'D'){
-		    buffer.append(ch);
 		    nextCh();
 		}
-	    	return new TokenInfo(DOUBLE_LITERAL, buffer.toString(),line);
+	    	return DOUBLE_LITERAL;
 	    }
 	    else{
-		return new TokenInfo(INT_LITERAL, buffer.toString(), line);
+		return INT_LITERAL;
 	    }
         default:
             if (isIdentifierStart(ch)) {
-                buffer = new StringBuffer();
                 while (isIdentifierPart(ch)) {
-                    buffer.append(ch);
                     nextCh();
                 }
-                String identifier = buffer.toString();
-                if (reserved.containsKey(identifier)) {
-                    return new TokenInfo(reserved.get(identifier), line);
-                } else {
-                    return new TokenInfo(IDENTIFIER, identifier, line);
-                }
+                TokenKind keyword = keyword(input.buffer(), tokenStart, input
+                        .offset() - tokenStart);
+                return keyword != null ? keyword : IDENTIFIER;
             } else {
                 reportScannerError("Unidentified input token: '%c'", ch);
                 nextCh();
-                return getNextToken();
+                return scan();
             }
         }
     }
 
+    /**
+     * Returns the keyword made up of the specified characters, if they make
+     * up one.
+     * 
+     * @param chars
+     *            the buffer holding the characters.
+     * @param offset
+     *            index of the first character in the buffer.
+     * @param length
+     *            number of characters.
+     * @return the keyword's kind; {@code null} if the characters are not a 
+     *         keyword.
+     */
+
+    private static TokenKind keyword(char[] chars, int offset, int length) {
+        char first = chars[offset];
+        if (length > MAX_KEYWORD_LENGTH || first < 'a' || first > 'z') {
+            return null;
+        }
+        for (TokenKind candidate : keywords[length][first - 'a']) {
+            String image = candidate.image();
+            int i = 1;
+            while (i < length && image.charAt(i) == chars[offset + i]) {
+                i++;
+            }
+            if (i == length) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the image of the token being scanned, which is of the specified
+     * kind.
+     * 
+     * @param kind
+     *            the token's kind.
+     * @param image
+     *            the token's image.
+     * @return the token's kind.
+     */
+
+    private TokenKind image(TokenKind kind, String image) {
+        tokenImage = image;
+        return kind;
+    }
+
     /**
      * Scans and returns an escaped character.
      * 
@@ -594,9 +657,8 @@ class Scanner {
 
     private void reportScannerError(String message, Object... args) {
         isInError = true;
-        System.err.printf("%s:%d: ", fileName, line);
-        System.err.printf(message, args);
-        System.err.println();
+        Session.current().report(new Diagnostic(fileName, line, String
+                .format(message, args)));
     }
 
     /**
@@ -675,6 +737,11 @@ class Scanner {
  * A buffered character reader. Abstracts out differences between platforms,
  * mapping all new lines to '\n'. Also, keeps track of line numbers where the
  * first line is numbered 1.
+ * <p>
+ * The whole source is read (and decoded) into a char array, in bulk, when
+ * the first character is asked for; characters are then scanned from the
+ * array, with the line number tracked here rather than by a
+ * {@link java.io.LineNumberReader}.
  */
 
 class CharReader {
@@ -682,8 +749,29 @@ class CharReader {
     /** A representation of the end of file as a character. */
     public final static char EOFCH = (char) -1;
 
-    /** The underlying reader records line numbers. */
-    private LineNumberReader lineNumberReader;
+    /** Size of the buffer when the size of the source is not known. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The reader the source is read from; {@code null} once read. */
+    private Reader reader;
+
+    /** The source; {@code null} until it is read. */
+    private char[] buffer;
+
+    /** Number of characters in the buffer. */
+    private int count;
+
+    /** Index of the next character in the buffer. */
+    private int position;
+
+    /**
+     * Index in the buffer of the character last scanned; the number of
+     * characters in the buffer at the end of file.
+     */
+    private int offset;
+
+    /** The current line number. */
+    private int line;
 
     /** Name of the file that is being read. */
     private String fileName;
@@ -698,12 +786,28 @@ class CharReader {
      */
 
     public CharReader(String fileName) throws FileNotFoundException {
-        lineNumberReader = new LineNumberReader(new FileReader(fileName));
-        this.fileName = fileName;
+        this(fileName, new FileReader(fileName));
+        // The file decodes to at most as many chars as it has bytes
+        buffer = new char[(int) Math.min(new File(fileName).length() + 1,
+                Integer.MAX_VALUE - 8)];
     }
 
     /**
+     * Constructs a CharReader for the source read from the specified reader.
+     * 
+     * @param fileName
+     *            the name of the source.
+     * @param reader
+     *            reader from which the source is read.
+     */
+
+    public CharReader(String fileName, Reader reader) {
+        this.reader = reader;
+        this.fileName = fileName;
+        line = 1;
+    }
 
+    /**
      * Scans the next character.
      * 
      * @return the character scanned.
@@ -712,7 +816,25 @@ class CharReader {
      */
 
     public char nextChar() throws IOException {
-        return (char) lineNumberReader.read();
+        if (reader != null) {
+            read();
+        }
+        offset = position;
+        if (position >= count) {
+            return EOFCH;
+        }
+        char ch = buffer[position++];
+        if (ch == '\n') {
+            line++;
+        } else if (ch == '\r') {
+            // \r and \r\n are new lines too
+            if (position < count && buffer[position] == '\n') {
+                position++;
+            }
+            line++;
+            ch = '\n';
+        }
+        return ch;
     }
 
     /**
@@ -722,8 +844,28 @@ class CharReader {
      */
 
     public int line() {
-        // LineNumberReader counts lines from 0.
-        return lineNumberReader.getLineNumber() + 1;
+        return line;
+    }
+
+    /**
+     * Returns the buffer holding the source, once a character has been
+     * scanned.
+     * 
+     * @return the buffer.
+     */
+
+    public char[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the index in the buffer of the character last scanned.
+     * 
+     * @return the index.
+     */
+
+    public int offset() {
+        return offset;
     }
 
     /**
@@ -744,7 +886,38 @@ class CharReader {
      */
 
     public void close() throws IOException {
-        lineNumberReader.close();
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        buffer = null;
+        count = 0;
+    }
+
+    /**
+     * Reads the whole source into the buffer, and closes the reader.
+     * 
+     * @exception IOException
+     *                if an I/O error occurs.
+     */
+
+    private void read() throws IOException {
+        if (buffer == null) {
+            buffer = new char[BUFFER_SIZE];
+        }
+        try {
+            int n;
+            while ((n = reader.read(buffer, count, buffer.length - count)) 
+                    >= 0) {
+                count += n;
+                if (count == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        } finally {
+            reader.close();
+            reader = null;
+        }
     }
 
 }
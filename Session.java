@@ -0,0 +1,703 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A compilation session holds the state shared by the units compiled together
+ * in one compilation: the {@link GlobalContext} (symbol table) they share, the
+ * {@link ByteClassLoader} in which their (partial) classes are defined, the
+ * {@link Type}s representing those classes, the compiler options that apply
+ * to all of them, and the streams to which output and diagnostics are
+ * written. Keeping this state in a session, rather than in static fields,
+ * allows independent compilations to run side by side in one process.
+ * <p>
+ * The session also drives the compilation of its units. Types are declared
+ * one unit at a time; but once they have been, the {@code preAnalyze},
+ * {@code analyze} and {@code codegen} phases of separate units run in
+ * parallel, on a fork-join pool sized to the machine.
+ * <p>
+ * The session a thread is working for is available from
+ * {@link #current()}.
+ */
+
+class Session {
+
+    /** Pool on which the phases of separate units are run. */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime
+            .getRuntime().availableProcessors());
+
+    /**
+     * The session each thread is working for; a thread that has not been
+     * given one works for a session of its own.
+     */
+    private static final ThreadLocal<Session> current =
+        ThreadLocal.withInitial(Session::new);
+
+    /** Standard output of the session. */
+    private PrintStream out;
+
+    /** Standard error of the session, where diagnostics are reported. */
+    private PrintStream err;
+
+    /** Names of the files written by the session. */
+    private List<String> outputs;
+
+    /**
+     * Names of the files of the class path that the session has read types
+     * from: class files, and archives holding them.
+     */
+    private Set<String> inputs;
+
+    /** The diagnostics reported in the session. */
+    private List<Diagnostic> diagnostics;
+
+    /**
+     * Maps the names of the classes generated in the session to their bytes,
+     * when they are kept in memory; {@code null} otherwise.
+     */
+    private Map<String, byte[]> classes;
+
+    /** The symbol table shared by the units. */
+    private GlobalContext globalContext;
+
+    /**
+     * Class loader in which the (partial) classes for the declared types are
+     * defined.
+     */
+    private ByteClassLoader byteClassLoader;
+
+    /**
+     * Maps descriptors to the Type representations of the classes defined in
+     * this session's class loaders.
+     */
+    private Map<String, Type> types;
+
+    /** Maps the fully qualified names of declared types to their units. */
+    private Map<String, JCompilationUnit> declaringUnits;
+
+    /**
+     * Maps the names of prebuilt classes, whose units are not being
+     * recompiled, to their bytes.
+     */
+    private Map<String, byte[]> prebuilt;
+
+    /**
+     * Maps the names of declared types to digests of their signatures (their
+     * partial classes).
+     */
+    private Map<String, String> signatures;
+
+    /**
+     * Maximum number of physical registers used for SPIM register allocation.
+     */
+    private int maxRegisterCount;
+
+    /** Statistics gathered over the compilation; {@code null} if none. */
+    private Stats stats;
+
+    /** JAR the classes are written to; {@code null} if none. */
+    private JarOutput jar;
+
+    /**
+     * Whether the session is one of many run in this process (by a server
+     * or a batch), and so must leave the process's state alone.
+     */
+    private boolean hosted;
+
+    /**
+     * Constructs a new compilation session writing to STDOUT and STDERR.
+     */
+
+    public Session() {
+        this(System.out, System.err);
+    }
+
+    /**
+     * Constructs a new compilation session writing to the specified streams.
+     *
+     * @param out
+     *            standard output of the session.
+     * @param err
+     *            standard error of the session.
+     */
+
+    public Session(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        outputs = Collections.synchronizedList(new ArrayList<String>());
+        inputs = Collections.synchronizedSet(new LinkedHashSet<String>());
+        diagnostics = Collections.synchronizedList(new ArrayList<Diagnostic>());
+        maxRegisterCount = 8;
+        reset();
+    }
+
+    /**
+     * Discards the symbol table, the types, the prebuilt classes and the
+     * signatures of this session, so that its units can be compiled afresh.
+     */
+
+    public void reset() {
+        globalContext = new GlobalContext();
+        byteClassLoader = null;
+        types = new ConcurrentHashMap<String, Type>();
+        declaringUnits = new HashMap<String, JCompilationUnit>();
+        prebuilt = new HashMap<String, byte[]>();
+        signatures = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     * Returns the session the current thread is working for.
+     *
+     * @return the current session.
+     */
+
+    public static Session current() {
+        return current.get();
+    }
+
+    /**
+     * Makes this the session the current thread is working for.
+     */
+
+    public void makeCurrent() {
+        current.set(this);
+    }
+
+    /**
+     * Returns the standard output of the session.
+     *
+     * @return the standard output.
+     */
+
+    public PrintStream out() {
+        return out;
+    }
+
+    /**
+     * Returns the standard error of the session.
+     *
+     * @return the standard error.
+     */
+
+    public PrintStream err() {
+        return err;
+    }
+
+    /**
+     * Records that the session has written the specified file.
+     *
+     * @param fileName
+     *            name of the file.
+     */
+
+    public void addOutput(String fileName) {
+        outputs.add(fileName);
+    }
+
+    /**
+     * Returns the names of the files written by the session.
+     *
+     * @return the names of the files.
+     */
+
+    public List<String> outputs() {
+        return outputs;
+    }
+
+    /**
+     * Records that the session has read a type from the specified file of
+     * the class path.
+     *
+     * @param fileName
+     *            name of the file (a class file, or the archive holding it).
+     */
+
+    public void addInput(String fileName) {
+        inputs.add(fileName);
+    }
+
+    /**
+     * Returns the names of the files of the class path that the session has
+     * read types from.
+     *
+     * @return the names of the files.
+     */
+
+    public Set<String> inputs() {
+        return inputs;
+    }
+
+    /**
+     * Reports a diagnostic: records it, and writes it to the standard error
+     * of the session.
+     * 
+     * @param diagnostic
+     *            the diagnostic.
+     */
+
+    public void report(Diagnostic diagnostic) {
+        diagnostics.add(diagnostic);
+        err.println(diagnostic);
+    }
+
+    /**
+     * Returns the diagnostics reported in the session.
+     * 
+     * @return the diagnostics.
+     */
+
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * Marks this session as one of many run in this process, by a server or
+     * a batch.
+     */
+
+    public void host() {
+        hosted = true;
+    }
+
+    /**
+     * Returns whether this session is one of many run in this process.
+     *
+     * @return {@code true} if the session is hosted by a server or a batch,
+     *         and {@code false} otherwise.
+     */
+
+    public boolean isHosted() {
+        return hosted;
+    }
+
+    /**
+     * Keeps the bytes of the classes generated (but not written to files) in
+     * this session in memory.
+     */
+
+    public void keepClasses() {
+        classes = new ConcurrentHashMap<String, byte[]>();
+    }
+
+    /**
+     * Returns the classes generated in this session, if they are being kept
+     * in memory.
+     * 
+     * @return maps the names of the classes to their bytes; {@code null} if
+     *         the classes are not being kept.
+     */
+
+    public Map<String, byte[]> classes() {
+        return classes;
+    }
+
+    /**
+     * Returns the global context (symbol table) shared by the units.
+     *
+     * @return the global context.
+     */
+
+    public GlobalContext globalContext() {
+        return globalContext;
+    }
+
+    /**
+     * Sets a new ByteClassLoader for loading classes from byte streams.
+     */
+
+    public void initializeByteClassLoader() {
+        byteClassLoader = new ByteClassLoader(this);
+    }
+
+    /**
+     * Returns the class loader in which (partial) classes are defined.
+     *
+     * @return the class loader.
+     */
+
+    public ByteClassLoader byteClassLoader() {
+        return byteClassLoader;
+    }
+
+    /**
+     * Returns the map from descriptors to the Type representations of the
+     * classes defined in this session's class loaders.
+     *
+     * @return the map of types.
+     */
+
+    public Map<String, Type> types() {
+        return types;
+    }
+
+    /**
+     * Adds a prebuilt class: one that is not being compiled in this session,
+     * but whose (previously compiled) class file the units may refer to. The
+     * class is declared along with the units' types.
+     * 
+     * @param name
+     *            fully qualified name of the class.
+     * @param bytes
+     *            bytes of the class file.
+     */
+
+    public void addPrebuilt(String name, byte[] bytes) {
+        prebuilt.put(name, bytes);
+    }
+
+    /**
+     * Returns the bytes of the prebuilt class having the specified name.
+     * 
+     * @param name
+     *            fully qualified name of the class.
+     * @return the bytes of the class; {@code null} if there is no such
+     *         prebuilt class.
+     */
+
+    public byte[] prebuilt(String name) {
+        return prebuilt.get(name);
+    }
+
+    /**
+     * Records the signature of a declared type, that is the bytes of its
+     * partial class, as a digest.
+     * 
+     * @param name
+     *            fully qualified name of the type.
+     * @param bytes
+     *            bytes of the partial class.
+     */
+
+    public void addSignature(String name, byte[] bytes) {
+        signatures.put(name, BuildState.digest(bytes));
+    }
+
+    /**
+     * Returns the digests of the signatures of the declared types, by their
+     * fully qualified names.
+     * 
+     * @return the digests of the signatures.
+     */
+
+    public Map<String, String> signatures() {
+        return signatures;
+    }
+
+    /**
+     * Returns the maximum number of physical registers used for SPIM register
+     * allocation.
+     *
+     * @return the maximum number of registers.
+     */
+
+    public int maxRegisterCount() {
+        return maxRegisterCount;
+    }
+
+    /**
+     * Sets the maximum number of physical registers used for SPIM register
+     * allocation; the value is clamped to 1-18.
+     *
+     * @param maxRegisterCount
+     *            the maximum number of registers.
+     */
+
+    public void maxRegisterCount(int maxRegisterCount) {
+        this.maxRegisterCount = Math.max(1, Math.min(18, maxRegisterCount));
+    }
+
+    /**
+     * Returns the statistics gathered over the compilation.
+     * 
+     * @return the statistics; {@code null} if none are gathered.
+     */
+
+    public Stats stats() {
+        return stats;
+    }
+
+    /**
+     * Sets the statistics to gather over the compilation.
+     * 
+     * @param stats
+     *            the statistics; {@code null} if none are to be gathered.
+     */
+
+    public void stats(Stats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Returns the JAR the classes are written to.
+     * 
+     * @return the JAR; {@code null} if the classes are written to class
+     *         files.
+     */
+
+    public JarOutput jar() {
+        return jar;
+    }
+
+    /**
+     * Sets the JAR the classes are written to.
+     * 
+     * @param jar
+     *            the JAR; {@code null} if the classes are to be written to
+     *            class files.
+     */
+
+    public void jar(JarOutput jar) {
+        this.jar = jar;
+    }
+
+    /**
+     * Declares the prebuilt classes, and the types of all the units, in the
+     * global context. This is done one unit at a time.
+     *
+     * @param units
+     *            the compilation units.
+     */
+
+    public void declareTypes(ArrayList<JCompilationUnit> units) {
+        Stats.Measurement measurement = Stats.measure(stats, "declareTypes");
+        makeCurrent();
+        initializeByteClassLoader();
+        for (String name : prebuilt.keySet()) {
+            globalContext.addType(0, Type.typeFor(loadPrebuilt(name)));
+        }
+        for (JCompilationUnit unit : units) {
+            unit.declareTypes(globalContext);
+            for (Type type : unit.declaredTypes()) {
+                declaringUnits.put(type.toString(), unit);
+            }
+        }
+        measurement.stop();
+    }
+
+    /**
+     * Pre-analyzes the units. Pre-analyzing a unit defines its (partial)
+     * classes, and a class can be defined only after its superclass has been;
+     * so the units are pre-analyzed in waves, each unit in a wave after the
+     * units declaring its superclasses, and the units within a wave in
+     * parallel.
+     *
+     * @param units
+     *            the compilation units.
+     */
+
+    public void preAnalyze(ArrayList<JCompilationUnit> units) {
+        Stats.Measurement measurement = Stats.measure(stats, "preAnalyze");
+        makeCurrent();
+        initializeByteClassLoader();
+        for (String name : prebuilt.keySet()) {
+            // Rebind the prebuilt type to its class in the new loader
+            Class<?> prebuiltClass = loadPrebuilt(name);
+            Type.typeFor(prebuiltClass).setClassRep(prebuiltClass);
+        }
+        for (ArrayList<JCompilationUnit> wave : preAnalysisWaves(units)) {
+            forEach(wave, unit -> unit.preAnalyze());
+        }
+        measurement.stop();
+    }
+
+    /**
+     * Parses the specified bodies, skipped over in parsing their unit, in
+     * parallel; noting syntax errors, but not reporting them.
+     *
+     * @param bodies
+     *            the bodies.
+     * @return {@code true} if a syntax error was found in any of the bodies,
+     *         and {@code false} otherwise.
+     */
+
+    public boolean parse(ArrayList<JLazyBlock> bodies) {
+        Stats.Measurement measurement = Stats.measure(stats, "parse/bodies");
+        AtomicBoolean errorHasOccurred = new AtomicBoolean();
+        forEach(bodies, body -> {
+            if (body.parse(false)) {
+                errorHasOccurred.set(true);
+            }
+        });
+        measurement.stop();
+        return errorHasOccurred.get();
+    }
+
+    /**
+     * Analyzes the units, in parallel.
+     *
+     * @param units
+     *            the compilation units.
+     */
+
+    public void analyze(ArrayList<JCompilationUnit> units) {
+        Stats.Measurement measurement = Stats.measure(stats, "analyze");
+        forEach(units, unit -> unit.analyze(null));
+        measurement.stop();
+    }
+
+    /**
+     * Generates code for the units, in parallel, each with its own emitter.
+     *
+     * @param units
+     *            the compilation units.
+     * @param toFile
+     *            whether the classes are written to the file system.
+     * @param destDir
+     *            destination directory for the class files.
+     */
+
+    public void codegen(ArrayList<JCompilationUnit> units, boolean toFile,
+            String destDir) {
+        Stats.Measurement measurement = Stats.measure(stats, "codegen");
+        forEach(units, unit -> {
+            CLEmitter output = new CLEmitter(toFile);
+            output.destinationDir(destDir);
+            unit.codegen(output);
+            if (stats != null) {
+                stats.count("JVM instructions", output.instructionCount());
+            }
+        });
+        measurement.stop();
+    }
+
+    /**
+     * Loads a prebuilt class in the current class loader. A prebuilt class
+     * extends only JDK and other prebuilt classes, so this never depends on
+     * the (partial) classes of the units.
+     * 
+     * @param name
+     *            fully qualified name of the class.
+     * @return the class.
+     */
+
+    private Class<?> loadPrebuilt(String name) {
+        try {
+            return byteClassLoader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new NoClassDefFoundError(name);
+        }
+    }
+
+    /**
+     * Groups the units into waves for pre-analysis: a unit goes in the wave
+     * after the latest of the waves holding the units that declare its
+     * superclasses.
+     *
+     * @param units
+     *            the compilation units.
+     * @return the waves.
+     */
+
+    private ArrayList<ArrayList<JCompilationUnit>> preAnalysisWaves(
+            ArrayList<JCompilationUnit> units) {
+        Map<JCompilationUnit, Integer> waveOf = new HashMap<JCompilationUnit, Integer>();
+        ArrayList<ArrayList<JCompilationUnit>> waves =
+            new ArrayList<ArrayList<JCompilationUnit>>();
+        for (JCompilationUnit unit : units) {
+            int wave = waveOf(unit, waveOf, new ArrayList<JCompilationUnit>());
+            while (waves.size() <= wave) {
+                waves.add(new ArrayList<JCompilationUnit>());
+            }
+            waves.get(wave).add(unit);
+        }
+        return waves;
+    }
+
+    /**
+     * Computes the pre-analysis wave of a unit.
+     *
+     * @param unit
+     *            the compilation unit.
+     * @param waveOf
+     *            the waves computed so far.
+     * @param visiting
+     *            the units whose waves are being computed (for breaking
+     *            cycles, which are reported in analysis).
+     * @return the wave of the unit.
+     */
+
+    private int waveOf(JCompilationUnit unit,
+            Map<JCompilationUnit, Integer> waveOf,
+            ArrayList<JCompilationUnit> visiting) {
+        if (waveOf.containsKey(unit)) {
+            return waveOf.get(unit);
+        }
+        visiting.add(unit);
+        int wave = 0;
+        for (String name : unit.superClassNames()) {
+            JCompilationUnit superUnit = declaringUnits.get(name);
+            if (superUnit != null && superUnit != unit
+                    && !visiting.contains(superUnit)) {
+                wave = Math.max(wave, waveOf(superUnit, waveOf, visiting) + 1);
+            }
+        }
+        visiting.remove(unit);
+        waveOf.put(unit, wave);
+        return wave;
+    }
+
+    /**
+     * Runs a phase on each of the units (or other parts of the compilation),
+     * in parallel on the pool (or directly when there is just one unit), and
+     * waits for all of them to complete. Each unit's phase runs with this
+     * session as the current one.
+     *
+     * @param units
+     *            the compilation units.
+     * @param phase
+     *            the phase.
+     */
+
+    private <T> void forEach(ArrayList<T> units, Consumer<T> phase) {
+        if (units.size() == 1) {
+            makeCurrent();
+            phase.accept(units.get(0));
+            return;
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (T unit : units) {
+            tasks.add(() -> {
+                Session previous = current.get();
+                makeCurrent();
+                try {
+                    phase.accept(unit);
+                } finally {
+                    current.set(previous);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,358 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Statistics gathered over a compilation (with {@code -stats}): for each
+ * phase of the compiler, the wall time spent in it and the bytes allocated
+ * while in it (as reported by the {@link com.sun.management.ThreadMXBean}),
+ * and counts of the AST nodes, instructions and intervals built. A phase
+ * nested in another (scanning within parsing, say) is named
+ * {@code outer/inner}, and reported under the outer phase.
+ * <p>
+ * A phase that runs on several threads at once is measured around the whole
+ * (and its allocation summed over all the threads in the process), while
+ * a phase that runs within another on each of those threads (such as class
+ * writing within code generation) is measured on each thread and summed.
+ * <p>
+ * The statistics are also emitted as JFR events, a {@link PhaseEvent} for
+ * each phase and a {@link CountEvent} for each count; so they are gathered
+ * whenever a flight recording has those events enabled, even without
+ * {@code -stats}.
+ */
+
+class Stats {
+
+    /** A measurement that measures nothing, for when there are no stats. */
+    private static final Measurement NONE = new Measurement(null, null, false);
+
+    /** Wall time (in nanoseconds) spent in each phase. */
+    private Map<String, Long> times;
+
+    /** Bytes allocated in each phase. */
+    private Map<String, Long> allocations;
+
+    /** The counts, by what is counted. */
+    private Map<String, Long> counts;
+
+    /**
+     * A measurement of a phase, from its construction to {@link #stop()}.
+     */
+
+    public static class Measurement {
+
+        /** The stats the measurement is added to. */
+        private Stats stats;
+
+        /** The phase being measured. */
+        private String phase;
+
+        /** Whether only the current thread's allocation is measured. */
+        private boolean thisThread;
+
+        /** Time at the start. */
+        private long startTime;
+
+        /** Bytes allocated at the start. */
+        private long startBytes;
+
+        /**
+         * Starts measuring a phase.
+         *
+         * @param stats
+         *            the stats the measurement is added to.
+         * @param phase
+         *            the phase.
+         * @param thisThread
+         *            whether only the current thread's allocation is
+         *            measured.
+         */
+
+        private Measurement(Stats stats, String phase, boolean thisThread) {
+            this.stats = stats;
+            this.phase = phase;
+            this.thisThread = thisThread;
+            if (stats != null) {
+                startBytes = allocatedBytes(thisThread);
+                startTime = System.nanoTime();
+            }
+        }
+
+        /**
+         * Stops measuring, and adds the measurement to the stats.
+         */
+
+        public void stop() {
+            if (stats != null) {
+                long time = System.nanoTime() - startTime;
+                stats.add(phase, time, allocatedBytes(thisThread) - startBytes);
+            }
+        }
+
+    }
+
+    /**
+     * Constructs empty stats.
+     */
+
+    public Stats() {
+        times = new LinkedHashMap<String, Long>();
+        allocations = new LinkedHashMap<String, Long>();
+        counts = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * Are the JFR events for the stats enabled (in a flight recording)? This
+     * is cheap enough to ask of every compilation, as it neither looks up the
+     * event type nor starts the management of the JVM.
+     *
+     * @return {@code true} if the events are enabled, and {@code false}
+     *         otherwise.
+     */
+
+    public static boolean eventsEnabled() {
+        return FlightRecorder.isInitialized() && new PhaseEvent().isEnabled();
+    }
+
+    /**
+     * Starts measuring the specified phase, which runs on the current thread
+     * and any number of others.
+     *
+     * @param stats
+     *            the stats the measurement is added to; {@code null} if
+     *            there are none, in which case nothing is measured.
+     * @param phase
+     *            the phase.
+     * @return the measurement.
+     */
+
+    public static Measurement measure(Stats stats, String phase) {
+        return stats == null ? NONE : new Measurement(stats, phase, false);
+    }
+
+    /**
+     * Starts measuring the specified phase, which runs on the current thread
+     * only.
+     *
+     * @param stats
+     *            the stats the measurement is added to; {@code null} if
+     *            there are none, in which case nothing is measured.
+     * @param phase
+     *            the phase.
+     * @return the measurement.
+     */
+
+    public static Measurement measureThread(Stats stats, String phase) {
+        return stats == null ? NONE : new Measurement(stats, phase, true);
+    }
+
+    /**
+     * Adds to the time spent and bytes allocated in the specified phase.
+     *
+     * @param phase
+     *            the phase.
+     * @param time
+     *            the time (in nanoseconds).
+     * @param bytes
+     *            the bytes allocated.
+     */
+
+    public synchronized void add(String phase, long time, long bytes) {
+        times.merge(phase, time, Long::sum);
+        allocations.merge(phase, bytes, Long::sum);
+    }
+
+    /**
+     * Adds to the specified count.
+     *
+     * @param what
+     *            what is counted.
+     * @param count
+     *            the number to add.
+     */
+
+    public synchronized void count(String what, long count) {
+        counts.merge(what, count, Long::sum);
+    }
+
+    /**
+     * Writes the report to the specified stream.
+     *
+     * @param out
+     *            the stream.
+     */
+
+    public synchronized void report(PrintStream out) {
+        out.printf("%-32s %12s %16s\n", "Phase", "Time (ms)", "Allocated (KB)");
+        for (String phase : phases()) {
+            // Indent a nested phase under the phase it's nested in
+            String name = "";
+            for (int i = 0; i < phase.split("/").length - 1; i++) {
+                name += "  ";
+            }
+            name += phase.substring(phase.lastIndexOf('/') + 1);
+            out.printf("%-32s %12.3f %16d\n", name, times.get(phase) / 1e6,
+                    allocations.get(phase) / 1024);
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            out.printf("%-32s %12d\n", count.getKey(), count.getValue());
+        }
+    }
+
+    /**
+     * Emits the stats as JFR events.
+     */
+
+    public synchronized void commitEvents() {
+        for (String phase : phases()) {
+            PhaseEvent event = new PhaseEvent();
+            event.phase = phase;
+            event.time = times.get(phase);
+            event.allocated = allocations.get(phase);
+            event.commit();
+        }
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            CountEvent event = new CountEvent();
+            event.name = count.getKey();
+            event.count = count.getValue();
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the phases in the order they are reported: each in the order
+     * in which it was first measured, except that a nested phase follows the
+     * phase it's nested in.
+     *
+     * @return the phases.
+     */
+
+    private ArrayList<String> phases() {
+        ArrayList<String> phases = new ArrayList<String>();
+        for (String phase : times.keySet()) {
+            if (phase.indexOf('/') < 0) {
+                addPhase(phase, phases);
+            }
+        }
+        for (String phase : times.keySet()) {
+            if (!phases.contains(phase)) {
+                phases.add(phase);
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * Adds the specified phase, followed by the phases nested in it, to the
+     * list of phases.
+     *
+     * @param phase
+     *            the phase.
+     * @param phases
+     *            the list of phases.
+     */
+
+    private void addPhase(String phase, ArrayList<String> phases) {
+        phases.add(phase);
+        for (String nested : times.keySet()) {
+            if (nested.startsWith(phase + "/")
+                    && nested.indexOf('/', phase.length() + 1) < 0) {
+                addPhase(nested, phases);
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far, by the current thread or by all
+     * the threads in the process.
+     *
+     * @param thisThread
+     *            whether just the current thread's bytes are wanted.
+     * @return the bytes allocated; 0 if this cannot be measured.
+     */
+
+    private static long allocatedBytes(boolean thisThread) {
+        // Fetched only here, as the first fetch starts the management of
+        // the JVM, which costs a compilation without stats far too much
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()
+                || !threads.isThreadAllocatedMemoryEnabled()) {
+            return 0;
+        }
+        if (thisThread) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        long bytes = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads
+                .getAllThreadIds())) {
+            bytes += Math.max(allocated, 0);
+        }
+        return bytes;
+    }
+
+}
+
+/**
+ * A JFR event giving the time spent and the bytes allocated in a phase of a
+ * compilation.
+ */
+
+@Name("jminusminus.Phase")
+@Label("j-- Compiler Phase")
+@Category("j--")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    /** The phase. */
+    @Label("Phase")
+    public String phase;
+
+    /** Wall time spent in the phase. */
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long time;
+
+    /** Bytes allocated in the phase. */
+    @Label("Allocated")
+    @DataAmount
+    public long allocated;
+
+}
+
+/**
+ * A JFR event giving a count (of AST nodes, instructions or intervals) in a
+ * compilation.
+ */
+
+@Name("jminusminus.Count")
+@Label("j-- Compiler Count")
+@Category("j--")
+@StackTrace(false)
+class CountEvent extends Event {
+
+    /** What is counted. */
+    @Label("Name")
+    public String name;
+
+    /** The count. */
+    @Label("Count")
+    public long count;
+
+}
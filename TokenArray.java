@@ -0,0 +1,206 @@
+// Copyright 2013 Bill Campbell, Swami Iyer and Bahar Akbal-Delibas
+
+package jminusminus;
+
+import java.util.Arrays;
+
+import static jminusminus.TokenKind.*;
+
+/**
+ * The whole token stream of a source file, as scanned in one pass by
+ * {@link Scanner#scanAll()}: for each token (the last being EOF), its kind,
+ * the offset and length of its characters in the source buffer, and its line,
+ * held in parallel arrays of primitives. A token is made into a
+ * {@link TokenInfo} only if one is asked for.
+ * <p>
+ * The image of an identifier or a number is its characters in the source,
+ * and is created only when asked for (an identifier's interned in the
+ * {@link NameTable}); that of a keyword, operator or separator is its kind's
+ * image. Only for a string or char literal (whose escapes are rewritten) or a
+ * number scanned in pieces is the image held here from the start.
+ */
+
+class TokenArray {
+
+    /** The token kinds, by ordinal. */
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    static {
+        // The ordinals are held in bytes, read as unsigned
+        if (KINDS.length > 256) {
+            throw new IllegalStateException("too many token kinds ("
+                    + KINDS.length + ") for a byte");
+        }
+    }
+
+    /** The source buffer. */
+    private char[] source;
+
+    /** Number of tokens. */
+    private int count;
+
+    /** Ordinals of the kinds of the tokens (unsigned). */
+    private byte[] kinds;
+
+    /** Offsets of the tokens' characters in the source buffer. */
+    private int[] starts;
+
+    /** Numbers of characters in the tokens. */
+    private int[] lengths;
+
+    /** Lines in which the tokens occur. */
+    private int[] lines;
+
+    /** Images of the tokens, where known; {@code null} otherwise. */
+    private String[] images;
+
+    /**
+     * Constructs an empty token array for the specified source buffer.
+     *
+     * @param source
+     *            the source buffer.
+     * @param capacity
+     *            the number of tokens expected.
+     */
+
+    public TokenArray(char[] source, int capacity) {
+        this.source = source;
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        images = new String[capacity];
+    }
+
+    /**
+     * Adds a token.
+     *
+     * @param kind
+     *            the token's kind.
+     * @param start
+     *            offset of the token's characters in the source buffer.
+     * @param length
+     *            number of characters in the token.
+     * @param line
+     *            the line in which the token occurs.
+     * @param image
+     *            the token's image, if it is not made up of its characters or
+     *            given by its kind; {@code null} otherwise.
+     */
+
+    public void add(TokenKind kind, int start, int length, int line,
+            String image) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            images = Arrays.copyOf(images, capacity);
+        }
+        kinds[count] = (byte) kind.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        images[count] = image;
+        count++;
+    }
+
+    /**
+     * Returns the number of tokens.
+     *
+     * @return the number of tokens.
+     */
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the kind of the specified token.
+     *
+     * @param i
+     *            index of the token.
+     * @return the token's kind.
+     */
+
+    public TokenKind kind(int i) {
+        return KINDS[kinds[i] & 0xFF];
+    }
+
+    /**
+     * Returns the offset of the specified token's characters in the source
+     * buffer.
+     *
+     * @param i
+     *            index of the token.
+     * @return the offset.
+     */
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Returns the number of characters in the specified token.
+     *
+     * @param i
+     *            index of the token.
+     * @return the number of characters.
+     */
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * Returns the line in which the specified token occurs.
+     *
+     * @param i
+     *            index of the token.
+     * @return the line.
+     */
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    /**
+     * Returns the image of the specified token.
+     *
+     * @param i
+     *            index of the token.
+     * @return the token's image.
+     */
+
+    public String image(int i) {
+        String image = images[i];
+        if (image == null) {
+            TokenKind kind = kind(i);
+            if (kind == IDENTIFIER) {
+                image = NameTable.intern(source, starts[i], lengths[i]);
+            } else if (kind == INT_LITERAL || kind == LONG_LITERAL
+                    || kind == DOUBLE_LITERAL) {
+                image = new String(source, starts[i], lengths[i]);
+            } else {
+                return kind.image();
+            }
+            images[i] = image;
+        }
+        return image;
+    }
+
+    /**
+     * Returns the specified token as a TokenInfo.
+     *
+     * @param i
+     *            index of the token.
+     * @return the token.
+     */
+
+    public TokenInfo token(int i) {
+        return new TokenInfo(kind(i), image(i), lines[i]);
+    }
+
+}
@@ -94,8 +94,8 @@ enum TokenKind {
 }
 
 /**
- * A representation of tokens returned by the lexical analyzer method,
- * {@link Scanner#getNextToken() getNextToken}. A token has a kind identifying 
+ * A representation of a token scanned by the lexical analyzer, as given by
+ * {@link TokenArray#token(int)}. A token has a kind identifying 
  * what kind of token it is, an image for providing any semantic text, and the 
  * line in which it occurred in the source file.
  */
@@ -7,7 +7,8 @@ import java.lang.reflect.Modifier;
 
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * For representing j-- types. All types are represented underneath (in the
@@ -30,8 +31,12 @@ class Type {
     /** The Type's internal (Java) representation. * */
     private Class<?> classRep;
 
-    /** Maps type names to their Type representations. */
-    private static Hashtable<String, Type> types = new Hashtable<String, Type>();
+    /**
+     * Maps type names to their Type representations. Types for the classes 
+     * defined (by a compilation) in a {@link ByteClassLoader} are mapped in
+     * the loader's {@link Session} instead.
+     */
+    private static Map<String, Type> types = new ConcurrentHashMap<String, Type>();
 
     /** The primitive type, int. */
     public final static Type INT = typeFor(int.class);
@@ -106,10 +111,12 @@ class Type {
      */
 
     public static Type typeFor(Class<?> classRep) {
-        if (types.get(descriptorFor(classRep)) == null) {
-            types.put(descriptorFor(classRep), new Type(classRep));
-        }
-        return types.get(descriptorFor(classRep));
+        Map<String, Type> types = classRep != null
+                && classRep.getClassLoader() instanceof ByteClassLoader ? 
+                ((ByteClassLoader) classRep.getClassLoader()).session().types()
+                : Type.types;
+        return types.computeIfAbsent(descriptorFor(classRep), 
+                descriptor -> new Type(classRep));
     }
 
     /**
@@ -322,7 +329,7 @@ class Type {
                 return;
             }
         }
-        JAST.compilationUnit.reportSemanticError(line,
+        JAST.compilationUnit().reportSemanticError(line,
                 "Type %s doesn't match any of the expected types %s", this,
                 Arrays.toString(expectedTypes));
     }
@@ -339,7 +346,7 @@ class Type {
 
     public void mustMatchExpected(int line, Type expectedType) {
         if (!matchesExpected(expectedType)) {
-            JAST.compilationUnit.reportSemanticError(line,
+            JAST.compilationUnit().reportSemanticError(line,
                     "Type %s doesn't match type %s", this, expectedType);
         }
     }
@@ -427,7 +434,7 @@ class Type {
      * @return the JVM descriptor.
      */
 
-    private static String descriptorFor(Class<?> cls) {
+    static String descriptorFor(Class<?> cls) {
         return cls == null ? "V" : cls == void.class ? "V"
                 : cls.isArray() ? "[" + descriptorFor(cls.getComponentType())
                         : cls.isPrimitive() ? (cls == int.class ? "I"
@@ -496,6 +503,7 @@ class Type {
      * and its argument types. This is pretty easy given our (current)
      * restriction that the types of the actual arguments must exactly match the
      * types of the formal parameters. Returns null if it cannot find one.
+     * The methods of each class are looked up in its {@link MemberIndex}.
      * 
      * @param name
      *            the method name.
@@ -505,21 +513,15 @@ class Type {
      */
 
     public Method methodFor(String name, Type[] argTypes) {
-        Class[] classes = new Class[argTypes.length];
-        for (int i = 0; i < argTypes.length; i++) {
-            classes[i] = argTypes[i].classRep;
-        }
-        Class cls = classRep;
+        String signature = signatureFor(argTypes);
+        Class<?> cls = classRep;
 
         // Search this class and all superclasses
         while (cls != null) {
-            java.lang.reflect.Method[] methods = cls.getDeclaredMethods();
-            for (java.lang.reflect.Method method : methods) {
-                if (method.getName().equals(name)
-                        && Type.argTypesMatch(classes, method
-                                .getParameterTypes())) {
-                    return new Method(method);
-                }
+            java.lang.reflect.Method method = MemberIndex.of(cls).method(name,
+                    signature);
+            if (method != null) {
+                return new Method(method);
             }
             cls = cls.getSuperclass();
         }
@@ -538,20 +540,10 @@ class Type {
      */
 
     public Constructor constructorFor(Type[] argTypes) {
-        Class[] classes = new Class[argTypes.length];
-        for (int i = 0; i < argTypes.length; i++) {
-            classes[i] = argTypes[i].classRep;
-        }
-
         // Search only this class (we don't inherit constructors)
-        java.lang.reflect.Constructor[] constructors = classRep
-                .getDeclaredConstructors();
-        for (java.lang.reflect.Constructor constructor : constructors) {
-            if (argTypesMatch(classes, constructor.getParameterTypes())) {
-                return new Constructor(constructor);
-            }
-        }
-        return null;
+        java.lang.reflect.Constructor<?> constructor = MemberIndex.of(
+                classRep).constructor(signatureFor(argTypes));
+        return constructor == null ? null : new Constructor(constructor);
     }
 
     /**
@@ -565,17 +557,32 @@ class Type {
     public Field fieldFor(String name) {
         Class<?> cls = classRep;
         while (cls != null) {
-            java.lang.reflect.Field[] fields = cls.getDeclaredFields();
-            for (java.lang.reflect.Field field : fields) {
-                if (field.getName().equals(name)) {
-                    return new Field(field);
-                }
+            java.lang.reflect.Field field = MemberIndex.of(cls).field(name);
+            if (field != null) {
+                return new Field(field);
             }
             cls = cls.getSuperclass();
         }
         return null;
     }
 
+    /**
+     * Returns the signature (as in a {@link MemberIndex}) of a member taking
+     * arguments of the specified types.
+     * 
+     * @param argTypes
+     *            the argument types.
+     * @return the signature.
+     */
+
+    private static String signatureFor(Type[] argTypes) {
+        Class<?>[] classes = new Class<?>[argTypes.length];
+        for (int i = 0; i < argTypes.length; i++) {
+            classes[i] = argTypes[i].classRep;
+        }
+        return MemberIndex.signature(classes);
+    }
+
     /**
      * Converts an array of argument types to a string representation of a
      * parenthesized list of the types, for example, (int, boolean, 
@@ -632,7 +639,7 @@ class Type {
                             .isJavaAssignableFrom(this)) {
                 return true;
             } else {
-                JAST.compilationUnit.reportSemanticError(line,
+                JAST.compilationUnit().reportSemanticError(line,
                         "The protected member, " + member.name()
                                 + ", is not accessible.");
                 return false;
@@ -643,7 +650,7 @@ class Type {
                     descriptorFor(member.member().getDeclaringClass()))) {
                 return true;
             } else {
-                JAST.compilationUnit.reportSemanticError(line,
+                JAST.compilationUnit().reportSemanticError(line,
                         "The private member, " + member.name()
                                 + ", is not accessible.");
                 return false;
@@ -654,7 +661,7 @@ class Type {
         if (packageName().equals(member.declaringType().packageName())) {
             return true;
         } else {
-            JAST.compilationUnit.reportSemanticError(line, "The member, "
+            JAST.compilationUnit().reportSemanticError(line, "The member, "
                     + member.name()
                     + ", is not accessible because it's in a different "
                     + "package.");
@@ -703,7 +710,7 @@ class Type {
                         : p2.getName()))) {
             return true;
         } else {
-            JAST.compilationUnit.reportSemanticError(line, "The type, "
+            JAST.compilationUnit().reportSemanticError(line, "The type, "
                     + type.getCanonicalName() + ", is not accessible from "
                     + referencingType.getCanonicalName());
             return false;
@@ -845,14 +852,12 @@ class TypeName extends Type {
         Type resolvedType = context.lookupType(name);
         if (resolvedType == null) {
             // Try loading a type with the give fullname
-            try {
-                resolvedType = typeFor(Class.forName(name));
+            resolvedType = context.compilationUnitContext().globalContext()
+                    .loadType(name);
+            if (resolvedType != null) {
                 context.addType(line, resolvedType);
-                // context.compilationUnitContext().addEntry(line,
-                // resolvedType.toString(),
-                // new TypeNameDefn(resolvedType));
-            } catch (Exception e) {
-                JAST.compilationUnit.reportSemanticError(line,
+            } else {
+                JAST.compilationUnit().reportSemanticError(line,
                         "Unable to locate a type named %s", name);
                 resolvedType = Type.ANY;
             }
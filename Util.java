@@ -2,6 +2,8 @@
 
 package jminusminus;
 
+import java.io.PrintStream;
+
 /**
  * This class defines helper functions.
  */
@@ -81,7 +83,8 @@ class Util {
 }
 
 /**
- * A utility class that allows pretty (indented) printing to STDOUT.
+ * A utility class that allows pretty (indented) printing to STDOUT (that is, to
+ * the standard output of the current {@link Session}).
  */
 
 class PrettyPrinter {
@@ -92,6 +95,9 @@ class PrettyPrinter {
     /** Current indentation (number of blank spaces). */
     private int indent;
 
+    /** Stream printed to. */
+    private PrintStream out;
+
     /**
      * Constructs a PrettyPrinter with an indentation width of 2.
      */
@@ -110,6 +116,7 @@ class PrettyPrinter {
     public PrettyPrinter(int indentWidth) {
         this.indentWidth = indentWidth;
         indent = 0;
+        out = Session.current().out();
     }
 
     /**
@@ -136,7 +143,7 @@ class PrettyPrinter {
 
     public void println() {
         doIndent();
-        System.out.println();
+        out.println();
     }
 
     /**
@@ -148,7 +155,7 @@ class PrettyPrinter {
 
     public void println(String s) {
         doIndent();
-        System.out.println(s);
+        out.println(s);
     }
 
     /**
@@ -160,7 +167,7 @@ class PrettyPrinter {
 
     public void print(String s) {
         doIndent();
-        System.out.print(s);
+        out.print(s);
     }
 
     /**
@@ -174,7 +181,7 @@ class PrettyPrinter {
 
     public void printf(String format, Object... args) {
         doIndent();
-        System.out.printf(format, args);
+        out.printf(format, args);
     }
 
     /**
@@ -183,7 +190,7 @@ class PrettyPrinter {
 
     private void doIndent() {
         for (int i = 0; i < indent; i++) {
-            System.out.print(" ");
+            out.print(" ");
         }
     }
 